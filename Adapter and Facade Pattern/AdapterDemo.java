@@ -1,3 +1,16 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
 public class AdapterDemo {
 
     interface Logger {
@@ -35,11 +48,345 @@ public class AdapterDemo {
         }
     }
 
-    public static void main(String[] args) {
+    /**
+     * Asynchronous Logger that never does I/O on the calling thread.
+     *
+     * Callers copy the message as UTF-8 into a preallocated slot of a bounded
+     * ring (multi-producer, one CAS per record) and return; nothing is
+     * allocated. A background writer drains the ring in batches into one
+     * direct buffer and writes it to the FileChannel with a single call. When
+     * the ring is full the overflow policy decides whether the caller waits
+     * or the record is dropped and counted. Messages longer than the slot are
+     * truncated.
+     *
+     * If the file cannot be written, the failed batch is lost and the error is
+     * handed back to callers: every later log call throws UncheckedIOException,
+     * and close() throws the IOException.
+     */
+    static class AsyncFileLogger implements Logger, AutoCloseable {
+
+        enum OverflowPolicy {
+            /** Wait for the writer to free a slot. */
+            BLOCK,
+            /** Discard the record and count it in {@link #droppedCount()}. */
+            DROP
+        }
+
+        enum FlushPolicy {
+            /** Write each batch; leave syncing to the OS. */
+            WRITE_ONLY,
+            /** Write and fsync each batch. */
+            FSYNC_EVERY_BATCH,
+            /** Write each batch, fsync at most once per flush interval. */
+            FSYNC_PERIODIC
+        }
+
+        private static final byte INFO = 0;
+        private static final byte ERROR = 1;
+        private static final byte[][] LEVEL_TAGS = {
+                " [INFO] ".getBytes(StandardCharsets.US_ASCII),
+                " [ERROR] ".getBytes(StandardCharsets.US_ASCII) };
+        private static final int BATCH_BYTES = 64 * 1024;
+        // length of a slot claimed after close: published but never written
+        private static final int SKIP = -1;
+
+        private final FileChannel channel;
+        private final OverflowPolicy overflow;
+        private final FlushPolicy flush;
+        private final long flushIntervalNanos;
+        private final int maxMessageBytes;
+        private final int mask;
+        // slot i: sequence, level, timestamp, length, and bytes at i * maxMessageBytes
+        private final AtomicLongArray sequences;
+        private final byte[] levels;
+        private final long[] timestamps;
+        private final int[] lengths;
+        private final byte[] messages;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+        private final Thread writer;
+        // writer-owned
+        private long head;
+        private long lastSync = System.nanoTime();
+        private boolean unsynced;
+        private final byte[] millisDigits = new byte[20];
+        private long renderedMillis = -1;
+        private int renderedDigits;
+        private volatile boolean parked;
+        private volatile boolean running = true;
+        // first write or fsync failure, rethrown to callers
+        private volatile IOException failure;
+
+        /**
+         * @param capacity          records buffered before the overflow policy applies; power of 2
+         * @param maxMessageBytes   UTF-8 bytes kept per message
+         * @param flushIntervalMillis used by FSYNC_PERIODIC
+         */
+        AsyncFileLogger(Path file, int capacity, int maxMessageBytes, OverflowPolicy overflow,
+                        FlushPolicy flush, long flushIntervalMillis) throws IOException {
+            if (Integer.bitCount(capacity) != 1)
+                throw new IllegalArgumentException("capacity must be a power of 2");
+            if (maxMessageBytes <= 0 || maxMessageBytes > BATCH_BYTES / 2)
+                throw new IllegalArgumentException("maxMessageBytes must be between 1 and " + BATCH_BYTES / 2);
+            if ((long) capacity * maxMessageBytes > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("capacity * maxMessageBytes must fit in one array");
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            this.overflow = overflow;
+            this.flush = flush;
+            this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+            this.maxMessageBytes = maxMessageBytes;
+            this.mask = capacity - 1;
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+            this.levels = new byte[capacity];
+            this.timestamps = new long[capacity];
+            this.lengths = new int[capacity];
+            this.messages = new byte[capacity * maxMessageBytes];
+            this.writer = new Thread(this::drain, "async-logger");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        }
+
+        @Override
+        public void logInfo(String message) {
+            enqueue(INFO, message);
+        }
+
+        @Override
+        public void logError(String message) {
+            enqueue(ERROR, message);
+        }
+
+        /**
+         * Records discarded because the ring was full (DROP policy).
+         */
+        public long droppedCount() {
+            return dropped.get();
+        }
+
+        private void enqueue(byte level, String message) {
+            if (!running)
+                throw new IllegalStateException("logger is closed");
+            IOException f = failure;
+            if (f != null)
+                throw new UncheckedIOException("async logger cannot write its file", f);
+            long t;
+            int idx;
+            while (true) {
+                t = tail.get();
+                idx = (int) t & mask;
+                long diff = sequences.get(idx) - t;
+                if (diff == 0) {
+                    if (tail.compareAndSet(t, t + 1)) {
+                        break;
+                    }
+                } else if (diff < 0) {
+                    // full
+                    if (overflow == OverflowPolicy.DROP) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    if (!running)
+                        throw new IllegalStateException("logger is closed");
+                    LockSupport.unpark(writer);
+                    LockSupport.parkNanos(1_000);
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            // close() may have landed since the check above. If running still reads true,
+            // the writer will see this claim in tail before it exits and waits for it
+            boolean open = running;
+            levels[idx] = level;
+            timestamps[idx] = System.currentTimeMillis();
+            // a record claimed after close is still published, as one the writer skips,
+            // so a writer that saw the claim does not wait for it forever
+            lengths[idx] = open ? encode(message, messages, idx * maxMessageBytes, maxMessageBytes) : SKIP;
+            sequences.lazySet(idx, t + 1);
+            if (parked || !open) {
+                LockSupport.unpark(writer);
+            }
+            if (!open)
+                throw new IllegalStateException("logger is closed");
+        }
+
+        // UTF-8 without allocating; stops before a character that would not fit
+        private static int encode(String s, byte[] dst, int offset, int max) {
+            int n = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    if (n + 1 > max) break;
+                    dst[offset + n++] = (byte) c;
+                } else if (c < 0x800) {
+                    if (n + 2 > max) break;
+                    dst[offset + n++] = (byte) (0xC0 | c >> 6);
+                    dst[offset + n++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    if (n + 4 > max) break;
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    dst[offset + n++] = (byte) (0xF0 | cp >> 18);
+                    dst[offset + n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    dst[offset + n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    dst[offset + n++] = (byte) (0x80 | cp & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    // a lone surrogate becomes '?' rather than invalid UTF-8
+                    if (n + 1 > max) break;
+                    dst[offset + n++] = '?';
+                } else {
+                    if (n + 3 > max) break;
+                    dst[offset + n++] = (byte) (0xE0 | c >> 12);
+                    dst[offset + n++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    dst[offset + n++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            return n;
+        }
+
+        private void drain() {
+            int idle = 0;
+            while (true) {
+                int drained = 0;
+                while (true) {
+                    int idx = (int) head & mask;
+                    if (sequences.get(idx) != head + 1) {
+                        break;
+                    }
+                    if (lengths[idx] != SKIP) {
+                        if (batch.remaining() < 20 + 9 + lengths[idx] + 1) {
+                            writeBatch();
+                        }
+                        append(idx);
+                    }
+                    sequences.lazySet(idx, head + mask + 1);
+                    head++;
+                    drained++;
+                }
+                if (batch.position() > 0) {
+                    writeBatch();
+                    sync(false);
+                }
+                if (drained > 0) {
+                    idle = 0;
+                } else if (!running && tail.get() == head) {
+                    sync(true);
+                    return;
+                } else if (idle < 100) {
+                    idle++;
+                    Thread.onSpinWait();
+                } else {
+                    parked = true;
+                    if (sequences.get((int) head & mask) != head + 1 && running) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                    parked = false;
+                    // periodic fsync also covers quiet periods
+                    sync(false);
+                }
+            }
+        }
+
+        // "<epoch millis> [LEVEL] message\n"
+        private void append(int idx) {
+            long millis = timestamps[idx];
+            // consecutive records mostly share a millisecond: render its digits once
+            if (millis != renderedMillis) {
+                renderedMillis = millis;
+                renderedDigits = 0;
+                long m = Math.max(0, millis);
+                do {
+                    millisDigits[19 - renderedDigits++] = (byte) ('0' + m % 10);
+                    m /= 10;
+                } while (m != 0);
+            }
+            batch.put(millisDigits, 20 - renderedDigits, renderedDigits);
+            batch.put(LEVEL_TAGS[levels[idx]]);
+            batch.put(messages, idx * maxMessageBytes, lengths[idx]);
+            batch.put((byte) '\n');
+        }
+
+        private void writeBatch() {
+            batch.flip();
+            try {
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+            } catch (IOException e) {
+                System.err.println("[ERROR] async logger write failed: " + e);
+                fail(e);
+            }
+            batch.clear();
+            unsynced = true;
+        }
+
+        private void sync(boolean force) {
+            if (!unsynced) {
+                return;
+            }
+            if (!force && (flush == FlushPolicy.WRITE_ONLY
+                    || flush == FlushPolicy.FSYNC_PERIODIC && System.nanoTime() - lastSync < flushIntervalNanos)) {
+                return;
+            }
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                System.err.println("[ERROR] async logger fsync failed: " + e);
+                fail(e);
+            }
+            lastSync = System.nanoTime();
+            unsynced = false;
+        }
+
+        private void fail(IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Stop accepting records, write everything queued, sync and close the file.
+         * Throws the first write or fsync failure, if there was one.
+         */
+        @Override
+        public void close() throws IOException {
+            running = false;
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+            IOException f = failure;
+            if (f != null)
+                throw new IOException("async logger lost records", f);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
 
         Logger logger = new LoggerAdapter(new ExternalFancyLogger());
 
         logger.logInfo("Application has started");
         logger.logError("An unexpected error occurred");
+
+        // same Logger interface, but callers only copy into a ring buffer
+        Path logFile = Files.createTempFile("app", ".log");
+        try (AsyncFileLogger async = new AsyncFileLogger(logFile, 1 << 14, 256,
+                AsyncFileLogger.OverflowPolicy.DROP, AsyncFileLogger.FlushPolicy.FSYNC_PERIODIC, 100)) {
+            Logger fast = async;
+            fast.logInfo("Application has started");
+            for (int i = 0; i < 10_000; i++) {
+                fast.logInfo("Handled request");
+            }
+            fast.logError("An unexpected error occurred");
+            System.out.println("[INFO] async log dropped " + async.droppedCount() + " records");
+        }
+        System.out.println("[INFO] async log written to " + logFile + " (" + Files.size(logFile) + " bytes)");
     }
 }
@@ -0,0 +1,169 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latest-value dispatcher: each observer has at most one pending delivery and
+ * always receives the most recent price. Ticks published while a delivery is
+ * pending overwrite it and are counted as dropped. Threshold alerts are never
+ * conflated: they queue in the observer's slot and are delivered, in order,
+ * ahead of the latest price.
+ *
+ * Use one instance per Stock; the executor may be shared and should be bounded
+ * (e.g. a fixed pool), since at most one task per observer is ever queued.
+ */
+public class ConflatingDispatcher implements PriceDispatcher {
+    // marks an empty slot; Long.MIN_VALUE is reserved and never published as a price
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<PriceObserver, Slot> slots = new ConcurrentHashMap<>();
+    // drops from observers that have since been removed
+    private final LongAdder retiredDropped = new LongAdder();
+
+    public ConflatingDispatcher(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void dispatch(Stock stock, long price) {
+        long stamp = stock.publishStamp();
+        for (PriceObserver observer : stock.observers()) {
+            Slot slot = slots.get(observer);
+            if (slot == null) {
+                slot = slots.computeIfAbsent(observer, o -> new Slot(stock, o));
+            }
+            slot.offer(price, stamp);
+        }
+    }
+
+    @Override
+    public void dispatchTo(Stock stock, PriceObserver observer, long price) {
+        Slot slot = slots.get(observer);
+        if (slot == null) {
+            slot = slots.computeIfAbsent(observer, o -> new Slot(stock, o));
+        }
+        slot.alert(price, stock.publishStamp());
+    }
+
+    @Override
+    public void observerRemoved(Stock stock, PriceObserver observer) {
+        Slot slot = slots.remove(observer);
+        if (slot != null) {
+            retiredDropped.add(slot.dropped.sum());
+        }
+    }
+
+    /**
+     * Number of intermediate ticks an observer never saw because a newer price
+     * replaced them while a delivery was pending.
+     */
+    public long droppedCount(PriceObserver observer) {
+        Slot slot = slots.get(observer);
+        return slot == null ? 0 : slot.dropped.sum();
+    }
+
+    /**
+     * Number of ticks delivered to an observer.
+     */
+    public long deliveredCount(PriceObserver observer) {
+        Slot slot = slots.get(observer);
+        return slot == null ? 0 : slot.delivered.sum();
+    }
+
+    /**
+     * Dropped ticks across all observers, including removed ones.
+     */
+    public long totalDropped() {
+        long total = retiredDropped.sum();
+        for (Slot slot : slots.values()) {
+            total += slot.dropped.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(timeout, unit)) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Per-observer mailbox of size one. The slot is its own task, so
+     * publishing allocates nothing once the slot exists.
+     */
+    private final class Slot implements Runnable {
+        private final Stock stock;
+        private final PriceObserver observer;
+        private final AtomicLong latest = new AtomicLong(EMPTY);
+        // alerts as {price, stamp}; rare, so a node per alert is fine
+        private final ConcurrentLinkedQueue<long[]> alerts = new ConcurrentLinkedQueue<>();
+        // publish stamp of the latest tick, for latency metrics
+        private volatile long stamp;
+        // true while a drain task is queued or running; guarantees one runner at a time
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder delivered = new LongAdder();
+
+        Slot(Stock stock, PriceObserver observer) {
+            this.stock = stock;
+            this.observer = observer;
+        }
+
+        void offer(long price, long publishStamp) {
+            stamp = publishStamp;
+            if (latest.getAndSet(price) != EMPTY) {
+                dropped.increment();
+            } else {
+                stock.recordEnqueued(observer, publishStamp);
+            }
+            schedule();
+        }
+
+        // an alert supersedes an older pending tick, which would otherwise arrive after it
+        void alert(long price, long publishStamp) {
+            if (latest.getAndSet(EMPTY) != EMPTY) {
+                dropped.increment();
+                stock.recordDropped(observer, stamp);
+            }
+            stock.recordEnqueued(observer, publishStamp);
+            alerts.add(new long[] { price, publishStamp });
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long[] alert = alerts.poll();
+                if (alert != null) {
+                    stock.deliver(observer, alert[0], alert[1]);
+                    delivered.increment();
+                    continue;
+                }
+                long price = latest.getAndSet(EMPTY);
+                if (price == EMPTY) {
+                    scheduled.set(false);
+                    // a tick or alert may have landed between the take and the reset
+                    if ((latest.get() == EMPTY && alerts.isEmpty()) || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                stock.deliver(observer, price, stamp);
+                delivered.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hosts many stocks on a fixed set of worker threads.
+ *
+ * Each symbol is pinned to one shard when it is listed. A shard owns a bounded
+ * multi-producer queue and a single worker thread that delivers every tick to
+ * the stock's observers synchronously, so ticks of one symbol reach each
+ * observer in the order they were published — unlike the per-task executor,
+ * where consecutive ticks race each other. Shards share nothing, so
+ * throughput scales with the number of shards up to the core count.
+ */
+public class Exchange {
+    private final Shard[] shards;
+    private final ConcurrentHashMap<String, Stock> listings = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    /**
+     * One shard per available core, 64k ticks of queue per shard.
+     */
+    public Exchange() {
+        this(Runtime.getRuntime().availableProcessors(), 1 << 16);
+    }
+
+    /**
+     * @param shardCount    number of worker threads
+     * @param queueCapacity ticks buffered per shard before publishers wait; power of 2
+     */
+    public Exchange(int shardCount, int queueCapacity) {
+        if (shardCount <= 0)
+            throw new IllegalArgumentException("shardCount must be positive");
+        if (Integer.bitCount(queueCapacity) != 1)
+            throw new IllegalArgumentException("queueCapacity must be a power of 2");
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, queueCapacity);
+        }
+        for (Shard shard : shards) {
+            shard.worker.start();
+        }
+    }
+
+    /**
+     * The listed stock for a symbol, creating it on first use.
+     */
+    public Stock list(String symbol) {
+        Stock stock = listings.get(symbol);
+        return stock != null ? stock : listings.computeIfAbsent(symbol, s -> new Stock(s, shardFor(s)));
+    }
+
+    /**
+     * The listed stock for a symbol quoted in the given scale, creating it on
+     * first use. An existing listing keeps the scale it was created with.
+     */
+    public Stock list(String symbol, PriceScale scale) {
+        Stock stock = listings.get(symbol);
+        return stock != null ? stock : listings.computeIfAbsent(symbol, s -> new Stock(s, shardFor(s), scale));
+    }
+
+    /**
+     * Listed stock, or null if the symbol is not listed.
+     */
+    public Stock get(String symbol) {
+        return listings.get(symbol);
+    }
+
+    public Collection<Stock> listings() {
+        return Collections.unmodifiableCollection(listings.values());
+    }
+
+    /**
+     * Publish a tick for a listed symbol.
+     */
+    public void updatePrice(String symbol, double price) {
+        listed(symbol).updatePrice(price);
+    }
+
+    /**
+     * Publish a fixed-point tick for a listed symbol, in the stock's scale.
+     */
+    public void updateScaledPrice(String symbol, long scaledPrice) {
+        listed(symbol).updateScaledPrice(scaledPrice);
+    }
+
+    private Stock listed(String symbol) {
+        Stock stock = listings.get(symbol);
+        if (stock == null)
+            throw new IllegalArgumentException("symbol not listed: " + symbol);
+        return stock;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Ticks queued on each shard, indexed by shard.
+     */
+    public long[] queueDepths() {
+        long[] depths = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            depths[i] = shards[i].depth();
+        }
+        return depths;
+    }
+
+    private Shard shardFor(String symbol) {
+        // spread the String hash so neighbouring symbols land on different shards
+        int h = symbol.hashCode() * 0x9E3779B9;
+        return shards[Math.floorMod(h ^ (h >>> 16), shards.length)];
+    }
+
+    /**
+     * Stop accepting ticks, let every shard drain its queue and wait for the
+     * workers to exit.
+     *
+     * @return true if all shards drained within the timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean drained = true;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.worker);
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            shard.worker.join(Math.max(1, remainingMillis));
+            if (shard.worker.isAlive()) {
+                shard.worker.interrupt();
+                drained = false;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * A worker thread and its queue. Acts as the PriceDispatcher of every
+     * stock pinned to it; the queue holds ticks in preallocated parallel
+     * arrays, with a per-slot sequence (Vyukov's bounded MPMC scheme, here
+     * with one consumer) so producers claim slots with a single CAS.
+     */
+    private final class Shard implements PriceDispatcher {
+        private final int mask;
+        private final AtomicLongArray sequences;
+        private final Stock[] stocks;
+        // set for a threshold alert: the one observer to notify
+        private final PriceObserver[] targets;
+        private final long[] prices;
+        private final long[] stamps;
+        private final AtomicLong tail = new AtomicLong();
+        // consumer-owned
+        private long head;
+        private final Thread worker;
+        private volatile boolean parked;
+
+        Shard(int index, int capacity) {
+            this.mask = capacity - 1;
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+            this.stocks = new Stock[capacity];
+            this.targets = new PriceObserver[capacity];
+            this.prices = new long[capacity];
+            this.stamps = new long[capacity];
+            this.worker = new Thread(this::work, "exchange-shard-" + index);
+            this.worker.setDaemon(true);
+        }
+
+        @Override
+        public void dispatch(Stock stock, long price) {
+            publish(stock, null, price);
+        }
+
+        // alerts queue behind the stock's earlier ticks and are delivered by the same worker
+        @Override
+        public void dispatchTo(Stock stock, PriceObserver observer, long price) {
+            publish(stock, observer, price);
+        }
+
+        private void publish(Stock stock, PriceObserver target, long price) {
+            if (!running)
+                throw new IllegalStateException("exchange is shut down");
+            long stamp = stock.publishStamp();
+            while (true) {
+                long t = tail.get();
+                int idx = (int) t & mask;
+                long diff = sequences.get(idx) - t;
+                if (diff == 0) {
+                    if (tail.compareAndSet(t, t + 1)) {
+                        stocks[idx] = stock;
+                        targets[idx] = target;
+                        prices[idx] = price;
+                        stamps[idx] = stamp;
+                        sequences.lazySet(idx, t + 1);
+                        break;
+                    }
+                } else if (diff < 0) {
+                    // full: the worker is behind, wait for it instead of dropping
+                    LockSupport.unpark(worker);
+                    LockSupport.parkNanos(1_000);
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            if (parked) {
+                LockSupport.unpark(worker);
+            }
+        }
+
+        private void work() {
+            int idle = 0;
+            while (true) {
+                int idx = (int) head & mask;
+                if (sequences.get(idx) == head + 1) {
+                    Stock stock = stocks[idx];
+                    PriceObserver target = targets[idx];
+                    long price = prices[idx];
+                    long stamp = stamps[idx];
+                    stocks[idx] = null;
+                    targets[idx] = null;
+                    sequences.lazySet(idx, head + mask + 1);
+                    head++;
+                    idle = 0;
+                    if (target != null) {
+                        stock.recordEnqueued(target, stamp);
+                        stock.deliver(target, price, stamp);
+                        continue;
+                    }
+                    for (PriceObserver observer : stock.observers()) {
+                        stock.recordEnqueued(observer, stamp);
+                        stock.deliver(observer, price, stamp);
+                    }
+                } else if (!running && tail.get() == head) {
+                    return;
+                } else if (idle < 100) {
+                    idle++;
+                    Thread.onSpinWait();
+                } else if (idle < 200) {
+                    idle++;
+                    Thread.yield();
+                } else {
+                    parked = true;
+                    // re-check after announcing so a racing publish is not missed
+                    if (sequences.get((int) head & mask) != head + 1 && running) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                    parked = false;
+                    if (Thread.interrupted()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        // approximate: head is read without synchronization
+        long depth() {
+            return tail.get() - head;
+        }
+
+        // the exchange owns shard threads; stopping one stock must not stop its neighbours
+        @Override
+        public void shutdown(long timeout, TimeUnit unit) {
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.function.LongSupplier;
 
 interface Observer{
    void update(String method,int stockPrice);
@@ -55,6 +56,253 @@ class UserSubscriber implements Observer{
    }
 }
 
+// Downstream of a WindowAggregator: one call per window instead of per price
+interface AggregateObserver{
+   void onWindow(WindowStats stats);
+}
+
+// Aggregate of the prices seen in one window
+class WindowStats{
+   final String topic;
+   final long startMillis;
+   final long endMillis;
+   final long count;
+   final long sum;
+   final int min;
+   final int max;
+   final int last;
+   final int p50;
+   final int p90;
+   final int p99;
+
+   WindowStats(String topic, long startMillis, long endMillis, long count, long sum,
+               int min, int max, int last, int p50, int p90, int p99){
+      this.topic = topic;
+      this.startMillis = startMillis;
+      this.endMillis = endMillis;
+      this.count = count;
+      this.sum = sum;
+      this.min = min;
+      this.max = max;
+      this.last = last;
+      this.p50 = p50;
+      this.p90 = p90;
+      this.p99 = p99;
+   }
+
+   double mean(){
+      return count == 0 ? 0 : (double) sum / count;
+   }
+
+   @Override
+   public String toString(){
+      return String.format("%s [%d, %d) n=%d min=%d max=%d last=%d mean=%.2f p50=%d p90=%d p99=%d",
+            topic, startMillis, endMillis, count, min, max, last, mean(), p50, p90, p99);
+   }
+}
+
+// Aggregation stage: register it on a TopicPublisher as an ordinary Observer and
+// register AggregateObservers on it. Time is cut into panes of `slide` millis;
+// each price only updates the current pane (count, sum, min, max, last and a
+// log-linear histogram for percentiles), so ingestion is O(1) on primitives and
+// allocates nothing. When time moves past a pane, the last `window / slide`
+// panes are merged into one WindowStats and emitted. A tumbling window is the
+// case window == slide. Windows are emitted when a later price arrives or on
+// advanceTo(), e.g. from a timer.
+//
+// Percentiles are bucket midpoints with 64 buckets per power of two: exact
+// below 128 and within about 1% above; negative prices count toward bucket 0.
+// One aggregator serves one topic.
+class WindowAggregator implements Observer{
+   private static final int SUB_BUCKETS = 64;
+   private static final int SUB_BITS = 6;
+   private static final int BUCKETS = (32 - SUB_BITS + 1) * SUB_BUCKETS;
+
+   private final long slideMillis;
+   private final int panes;
+   private final LongSupplier clock;
+   private final Pane[] ring;
+   private final long[] merged = new long[BUCKETS];
+   private final List<AggregateObserver> observers = new ArrayList<>();
+   private String topic;
+   // pane index (time / slide) that new prices go into; MIN_VALUE until the first price
+   private long current = Long.MIN_VALUE;
+
+   static WindowAggregator tumbling(long windowMillis){
+      return new WindowAggregator(windowMillis, windowMillis, System::currentTimeMillis);
+   }
+
+   static WindowAggregator sliding(long windowMillis, long slideMillis){
+      return new WindowAggregator(windowMillis, slideMillis, System::currentTimeMillis);
+   }
+
+   WindowAggregator(long windowMillis, long slideMillis, LongSupplier clock){
+      if (slideMillis <= 0 || windowMillis < slideMillis || windowMillis % slideMillis != 0)
+         throw new IllegalArgumentException("window must be a positive multiple of slide");
+      this.slideMillis = slideMillis;
+      this.panes = (int) (windowMillis / slideMillis);
+      this.clock = clock;
+      this.ring = new Pane[panes];
+      for (int i = 0; i < panes; i++) {
+         ring[i] = new Pane();
+      }
+   }
+
+   public synchronized void registerObserver(AggregateObserver o){
+      observers.add(o);
+   }
+
+   public synchronized void removeObserver(AggregateObserver o){
+      observers.remove(o);
+   }
+
+   @Override
+   public synchronized void update(String topic, int price){
+      this.topic = topic;
+      advanceTo(clock.getAsLong());
+      ring[Math.floorMod(current, panes)].add(price);
+   }
+
+   // Emit every window that ended at or before nowMillis
+   public synchronized void advanceTo(long nowMillis){
+      long pane = Math.floorDiv(nowMillis, slideMillis);
+      if (current == Long.MIN_VALUE) {
+         current = pane;
+         return;
+      }
+      // after a long gap only the last `panes` windows can hold data
+      if (pane - current > panes) {
+         for (int i = 0; i < panes; i++) {
+            close();
+         }
+         current = pane;
+         return;
+      }
+      while (current < pane) {
+         close();
+      }
+   }
+
+   // emit the window ending with the current pane, then open the next pane
+   private void close(){
+      emit(current);
+      current++;
+      ring[Math.floorMod(current, panes)].reset();
+   }
+
+   private void emit(long lastPane){
+      long count = 0, sum = 0;
+      int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, last = 0;
+      Arrays.fill(merged, 0);
+      for (long p = lastPane - panes + 1; p <= lastPane; p++) {
+         Pane pane = ring[Math.floorMod(p, panes)];
+         if (pane.count == 0) {
+            continue;
+         }
+         count += pane.count;
+         sum += pane.sum;
+         min = Math.min(min, pane.min);
+         max = Math.max(max, pane.max);
+         last = pane.last;
+         for (int b = pane.lowBucket; b <= pane.highBucket; b++) {
+            merged[b] += pane.histogram[b];
+         }
+      }
+      if (count == 0) {
+         return;
+      }
+      WindowStats stats = new WindowStats(topic, (lastPane - panes + 1) * slideMillis, (lastPane + 1) * slideMillis,
+            count, sum, min, max, last,
+            percentile(count, 50, min, max), percentile(count, 90, min, max), percentile(count, 99, min, max));
+      for (AggregateObserver o : observers) {
+         o.onWindow(stats);
+      }
+   }
+
+   private int percentile(long count, double p, int min, int max){
+      long rank = Math.max(1, (long) Math.ceil(count * p / 100.0));
+      long seen = 0;
+      for (int b = 0; b < BUCKETS; b++) {
+         seen += merged[b];
+         if (seen >= rank) {
+            return (int) Math.max(min, Math.min(max, midpoint(b)));
+         }
+      }
+      return max;
+   }
+
+   static int bucket(int value){
+      if (value < SUB_BUCKETS * 2) {
+         return Math.max(0, value);
+      }
+      int shift = 31 - Integer.numberOfLeadingZeros(value) - SUB_BITS;
+      return (shift + 1) * SUB_BUCKETS + ((value >>> shift) - SUB_BUCKETS);
+   }
+
+   private static long midpoint(int bucket){
+      if (bucket < SUB_BUCKETS * 2) {
+         return bucket;
+      }
+      int shift = bucket / SUB_BUCKETS - 1;
+      long low = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+      return low + ((1L << shift) >> 1);
+   }
+
+   // aggregates for one slide interval
+   private static final class Pane{
+      final long[] histogram = new long[BUCKETS];
+      long count;
+      long sum;
+      int min;
+      int max;
+      int last;
+      // touched bucket range, so reset and merge skip the empty ones
+      int lowBucket = BUCKETS;
+      int highBucket = -1;
+
+      void add(int price){
+         if (count == 0) {
+            min = price;
+            max = price;
+         } else {
+            min = Math.min(min, price);
+            max = Math.max(max, price);
+         }
+         count++;
+         sum += price;
+         last = price;
+         int b = bucket(price);
+         histogram[b]++;
+         lowBucket = Math.min(lowBucket, b);
+         highBucket = Math.max(highBucket, b);
+      }
+
+      void reset(){
+         for (int b = lowBucket; b <= highBucket; b++) {
+            histogram[b] = 0;
+         }
+         count = 0;
+         sum = 0;
+         lowBucket = BUCKETS;
+         highBucket = -1;
+      }
+   }
+}
+
+// Dashboard only wants per-window aggregates
+class DashboardSubscriber implements AggregateObserver{
+   private String name;
+
+   public DashboardSubscriber(String name){
+      this.name = name;
+   }
+
+   @Override
+   public void onWindow(WindowStats stats){
+      System.out.println(name + " window " + stats);
+   }
+}
+
 public class Main{
    public static void main(String[] args) {
       TopicPublisher stock = new TopicPublisher("Stock");
@@ -71,6 +319,22 @@ public class Main{
       stock.updatePrice(32);
       stock.updatePrice(33);
       stock.updatePrice(34);
+
+      // aggregation stage: 5,000 raw prices become 5 one-second and 10 sliding aggregates
+      long[] now = {0};
+      WindowAggregator perSecond = new WindowAggregator(1000, 1000, () -> now[0]);
+      WindowAggregator sliding = new WindowAggregator(1000, 500, () -> now[0]);
+      perSecond.registerObserver(new DashboardSubscriber("Dashboard-1s"));
+      sliding.registerObserver(new DashboardSubscriber("Dashboard-1s/500ms"));
+      TopicPublisher feed = new TopicPublisher("Feed");
+      feed.registerObserver(perSecond);
+      feed.registerObserver(sliding);
+      for (int i = 0; i < 5000; i++) {
+         now[0] = i;
+         feed.notifyObservers(100 + (i % 50));
+      }
+      perSecond.advanceTo(5000);
+      sliding.advanceTo(5000);
       
    }
 }
\ No newline at end of file
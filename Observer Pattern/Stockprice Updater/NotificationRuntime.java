@@ -0,0 +1,321 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Notification runtime shared by many stocks. Every observer gets one bounded
+ * mailbox (across all the stocks it watches), drained in order by a virtual
+ * thread that exists only while the mailbox has work. Thousands of stocks
+ * therefore cost no platform threads, and a slow observer only fills its own
+ * mailbox, where the overflow policy decides what gives.
+ */
+public class NotificationRuntime {
+    /**
+     * What a full mailbox does with a new tick.
+     */
+    public enum OverflowPolicy {
+        /** Publisher waits for room; nothing is lost. */
+        BLOCK_PUBLISHER,
+        /** Oldest queued tick is discarded to make room. */
+        DROP_OLDEST,
+        /** New tick is discarded. */
+        DROP_NEWEST
+    }
+
+    private static volatile NotificationRuntime shared;
+
+    private final int mailboxCapacity;
+    private final OverflowPolicy policy;
+    private final ConcurrentHashMap<PriceObserver, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ThreadFactory drainers = Thread.ofVirtual().name("notify-", 0).factory();
+    private volatile boolean shutdown;
+
+    public NotificationRuntime(int mailboxCapacity, OverflowPolicy policy) {
+        if (mailboxCapacity <= 0)
+            throw new IllegalArgumentException("mailboxCapacity must be positive");
+        if (policy == null)
+            throw new IllegalArgumentException("policy cannot be null");
+        this.mailboxCapacity = mailboxCapacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Process-wide runtime used by {@code new Stock(symbol)}: 1024-deep
+     * mailboxes that block the publisher when full. Once it is shut down,
+     * the next call creates a fresh one.
+     */
+    public static NotificationRuntime shared() {
+        if (shared == null) {
+            synchronized (NotificationRuntime.class) {
+                if (shared == null) {
+                    shared = new NotificationRuntime(1024, OverflowPolicy.BLOCK_PUBLISHER);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * A dispatcher for one Stock. Shutting it down waits for that stock's
+     * observers to drain; the runtime itself keeps running.
+     */
+    public PriceDispatcher dispatcher() {
+        return new StockView();
+    }
+
+    /**
+     * Ticks discarded by an observer's mailbox under the DROP_* policies.
+     */
+    public long droppedCount(PriceObserver observer) {
+        Mailbox m = mailboxes.get(observer);
+        return m == null ? 0 : m.dropped;
+    }
+
+    /**
+     * Stop accepting ticks and wait for every mailbox, across all stocks, to drain.
+     *
+     * @return true if everything drained within the timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        shutdown = true;
+        // stocks created from now on must not be bound to a runtime that rejects every tick
+        synchronized (NotificationRuntime.class) {
+            if (shared == this) {
+                shared = null;
+            }
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Mailbox m : mailboxes.values()) {
+            if (!m.awaitDrained(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Mailbox mailbox(PriceObserver observer) {
+        Mailbox m = mailboxes.get(observer);
+        return m != null ? m : mailboxes.computeIfAbsent(observer, Mailbox::new);
+    }
+
+    // a mailbox may be retired between the lookup and the offer; the next lookup makes a fresh one
+    private void offer(PriceObserver observer, Stock stock, long price, long stamp) {
+        while (!mailbox(observer).offer(stock, price, stamp)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    // in the map's compute, so no retain or lookup can slip between the idle check and the removal
+    private void retireIfIdle(Mailbox m) {
+        mailboxes.computeIfPresent(m.observer, (o, current) -> current == m && m.tryRetire() ? null : current);
+    }
+
+    /**
+     * Per-stock facade handed to Stock as its PriceDispatcher.
+     */
+    private final class StockView implements PriceDispatcher {
+        private volatile Stock stock;
+
+        @Override
+        public void dispatch(Stock stock, long price) {
+            if (shutdown)
+                throw new IllegalStateException("notification runtime is shut down");
+            this.stock = stock;
+            long stamp = stock.publishStamp();
+            for (PriceObserver observer : stock.observers()) {
+                offer(observer, stock, price, stamp);
+            }
+        }
+
+        @Override
+        public void dispatchTo(Stock stock, PriceObserver observer, long price) {
+            if (shutdown)
+                throw new IllegalStateException("notification runtime is shut down");
+            // threshold subscribers need not be registered observers, so no retain here
+            offer(observer, stock, price, stock.publishStamp());
+        }
+
+        @Override
+        public void observerAdded(Stock stock, PriceObserver observer) {
+            this.stock = stock;
+            mailboxes.compute(observer, (o, current) -> {
+                Mailbox m = current != null ? current : new Mailbox(o);
+                m.retain();
+                return m;
+            });
+        }
+
+        @Override
+        public void observerRemoved(Stock stock, PriceObserver observer) {
+            Mailbox m = mailboxes.get(observer);
+            if (m != null && m.release()) {
+                retireIfIdle(m);
+            }
+        }
+
+        @Override
+        public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+            Stock s = stock;
+            if (s == null) {
+                return;
+            }
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (PriceObserver observer : s.observers()) {
+                Mailbox m = mailboxes.get(observer);
+                if (m != null) {
+                    m.awaitDrained(deadline);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bounded FIFO of (stock, scaled price) pairs in preallocated parallel arrays.
+     * At most one virtual thread drains it at a time, so an observer sees its
+     * ticks in order and never concurrently.
+     */
+    private final class Mailbox implements Runnable {
+        private final PriceObserver observer;
+        private final Stock[] stocks = new Stock[mailboxCapacity];
+        private final long[] prices = new long[mailboxCapacity];
+        private final long[] stamps = new long[mailboxCapacity];
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private final Condition drained = lock.newCondition();
+        private int head;
+        private int size;
+        private boolean draining;
+        // number of stocks this observer is registered with
+        private int references;
+        // removed from the map; offers must go to the observer's new mailbox
+        private boolean retired;
+        private volatile long dropped;
+
+        Mailbox(PriceObserver observer) {
+            this.observer = observer;
+        }
+
+        void retain() {
+            lock.lock();
+            try {
+                references++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // true when no stock references the mailbox and nothing is queued
+        boolean release() {
+            lock.lock();
+            try {
+                return --references <= 0 && size == 0 && !draining;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // called by retireIfIdle, inside the map's compute
+        boolean tryRetire() {
+            lock.lock();
+            try {
+                retired = references <= 0 && size == 0 && !draining;
+                return retired;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // false if the mailbox was retired and the tick not queued
+        boolean offer(Stock stock, long price, long stamp) {
+            lock.lock();
+            try {
+                if (retired) {
+                    return false;
+                }
+                if (size == mailboxCapacity) {
+                    switch (policy) {
+                        case DROP_NEWEST:
+                            dropped++;
+                            return true;
+                        case DROP_OLDEST:
+                            stocks[head].recordDropped(observer, stamps[head]);
+                            stocks[head] = null;
+                            head = (head + 1) % mailboxCapacity;
+                            size--;
+                            dropped++;
+                            break;
+                        case BLOCK_PUBLISHER:
+                            while (size == mailboxCapacity) {
+                                notFull.awaitUninterruptibly();
+                            }
+                            break;
+                    }
+                }
+                int tail = (head + size) % mailboxCapacity;
+                stocks[tail] = stock;
+                prices[tail] = price;
+                stamps[tail] = stamp;
+                stock.recordEnqueued(observer, stamp);
+                size++;
+                if (!draining) {
+                    draining = true;
+                    drainers.newThread(this).start();
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean unreferenced;
+            while (true) {
+                Stock stock;
+                long price;
+                long stamp;
+                lock.lock();
+                try {
+                    if (size == 0) {
+                        draining = false;
+                        drained.signalAll();
+                        unreferenced = references <= 0;
+                        break;
+                    }
+                    stock = stocks[head];
+                    price = prices[head];
+                    stamp = stamps[head];
+                    stocks[head] = null;
+                    head = (head + 1) % mailboxCapacity;
+                    size--;
+                    notFull.signal();
+                } finally {
+                    lock.unlock();
+                }
+                stock.deliver(observer, price, stamp);
+            }
+            if (unreferenced) {
+                // outside the lock: the map's compute takes it
+                retireIfIdle(this);
+            }
+        }
+
+        boolean awaitDrained(long deadlineNanos) throws InterruptedException {
+            lock.lock();
+            try {
+                while (size > 0 || draining) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    drained.awaitNanos(remaining);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,8 +1,135 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 // STEP 1: Observer interface
 interface Observer {
     void update(String topic, String message);
+
+    // Binary delivery: one Payload is shared by every subscriber of a publish,
+    // so fan-out allocates nothing per subscriber. Defaults to the text form.
+    default void update(String topic, Payload payload) {
+        update(topic, payload.asString());
+    }
+}
+
+// Message body as read-only UTF-8 bytes, encoded once per publish and shared
+// across all deliveries. The String view is decoded on first use and cached.
+final class Payload {
+    private final ByteBuffer bytes;
+    // racy single-check: decoding twice is harmless, String is immutable
+    private String text;
+
+    private Payload(ByteBuffer bytes, String text) {
+        this.bytes = bytes;
+        this.text = text;
+    }
+
+    static Payload of(String message) {
+        return new Payload(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer(), message);
+    }
+
+    // shares the buffer's remaining bytes; the caller must not change them afterwards
+    static Payload wrap(ByteBuffer buffer) {
+        return new Payload(buffer.slice().asReadOnlyBuffer(), null);
+    }
+
+    public int length() {
+        return bytes.limit();
+    }
+
+    public byte byteAt(int index) {
+        return bytes.get(index);
+    }
+
+    // copy into dst without allocating
+    public void copyTo(byte[] dst, int offset) {
+        bytes.get(0, dst, offset, bytes.limit());
+    }
+
+    // independent view over the shared bytes, positioned at the start
+    public ByteBuffer buffer() {
+        return bytes.duplicate();
+    }
+
+    public String asString() {
+        String t = text;
+        if (t == null) {
+            t = StandardCharsets.UTF_8.decode(bytes.duplicate()).toString();
+            text = t;
+        }
+        return t;
+    }
+
+    @Override
+    public String toString() {
+        return asString();
+    }
+}
+
+// Builds an output line in a reused byte buffer and writes it with a single
+// call, so console output needs no per-line String. Each publisher or
+// subscriber owns one and holds its lock while printing; PrintStream.write
+// locks the stream anyway, so this adds no contention, and unlike a
+// per-thread buffer it survives short-lived delivery threads.
+final class ConsoleLine {
+    private byte[] buf = new byte[256];
+    private int length;
+
+    ConsoleLine reset() {
+        length = 0;
+        return this;
+    }
+
+    ConsoleLine put(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    // ASCII fast path; anything else is encoded properly
+    ConsoleLine put(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 128) {
+                return put(s.getBytes(StandardCharsets.UTF_8));
+            }
+            buf[length + i] = (byte) c;
+        }
+        length += s.length();
+        return this;
+    }
+
+    ConsoleLine put(Payload payload) {
+        ensure(payload.length());
+        payload.copyTo(buf, length);
+        length += payload.length();
+        return this;
+    }
+
+    void println(PrintStream out) {
+        ensure(1);
+        buf[length++] = '\n';
+        out.write(buf, 0, length);
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + extra));
+        }
+    }
 }
 
 // STEP 2: Subject interface
@@ -13,13 +140,19 @@ interface Subject {
 }
 
 // STEP 3: Concrete Subject (TopicPublisher)
+// Safe to register/remove observers while other threads publish: the
+// registry is a linked list that notify walks without locks or copies.
 class TopicPublisher implements Subject {
     private String topicName;
-    private List<Observer> observers;
+    private final byte[] header;
+    private final ObserverRegistry observers = new ObserverRegistry();
+    // optional: keeps every message so absent subscribers can catch up
+    private volatile TopicLog log;
+    private final ConsoleLine line = new ConsoleLine();
 
     public TopicPublisher(String topicName) {
         this.topicName = topicName;
-        this.observers = new ArrayList<>();
+        this.header = ("\n[" + topicName + "] New message: ").getBytes(StandardCharsets.UTF_8);
     }
 
     @Override
@@ -34,35 +167,629 @@ class TopicPublisher implements Subject {
 
     @Override
     public void notifyObservers(String message) {
-        for (Observer o : observers) {
-            o.update(topicName, message);
+        notifyObservers(Payload.of(message));
+    }
+
+    public void notifyObservers(Payload payload) {
+        for (ObserverRegistry.Node n = observers.first(); n != null; n = n.next) {
+            if (!n.removed) {
+                n.observer.update(topicName, payload);
+            }
         }
     }
 
     // When a new post/event happens
     public void publish(String message) {
-        System.out.println("\n[" + topicName + "] New message: " + message);
-        notifyObservers(message);
+        publish(Payload.of(message));
+    }
+
+    // Binary publish: the same bytes go to the log and to every observer
+    public void publish(Payload payload) {
+        synchronized (line) {
+            line.reset().put(header).put(payload).println(System.out);
+        }
+        TopicLog l = log;
+        if (l != null) {
+            l.append(payload.buffer());
+        }
+        notifyObservers(payload);
+    }
+
+    // Persist every published message from now on
+    public void enableLog(TopicLog log) {
+        this.log = log;
+    }
+
+    // Deliver everything the named consumer has not committed yet, in order,
+    // committing after each batch. Register the observer first to avoid a gap;
+    // a message published in between may then arrive twice.
+    public long catchUp(String consumer, Observer o) {
+        TopicLog l = log;
+        if (l == null)
+            throw new IllegalStateException("no log enabled for " + topicName);
+        long from = l.committedOffset(consumer);
+        long start = from;
+        while (true) {
+            long next = l.read(from, 1024, (offset, timestamp, payload) ->
+                    o.update(topicName, Payload.wrap(payload)));
+            if (next == from) {
+                return next - start;
+            }
+            l.commit(consumer, next);
+            from = next;
+        }
+    }
+}
+
+// Observer set with O(1) add/remove by identity and duplicate suppression.
+// Writers take a lock and keep an identity map to each node; readers only
+// follow volatile next pointers. A removed node keeps its next pointer, so a
+// reader standing on it still reaches the rest of the list. Iteration is
+// weakly consistent: observers added or removed mid-walk may or may not be seen.
+class ObserverRegistry {
+    static final class Node {
+        final Observer observer;
+        volatile Node next;
+        volatile boolean removed;
+        // writer-only
+        Node prev;
+
+        Node(Observer observer) {
+            this.observer = observer;
+        }
+    }
+
+    private final Node head = new Node(null);
+    private final Map<Observer, Node> index = new IdentityHashMap<>();
+    private Node tail = head;
+
+    /**
+     * @return false if the observer was already registered
+     */
+    public synchronized boolean add(Observer o) {
+        if (o == null)
+            throw new IllegalArgumentException("observer cannot be null");
+        if (index.containsKey(o)) {
+            return false;
+        }
+        Node node = new Node(o);
+        node.prev = tail;
+        index.put(o, node);
+        // publish last: readers see a fully built node
+        tail.next = node;
+        tail = node;
+        return true;
+    }
+
+    public synchronized boolean remove(Observer o) {
+        Node node = index.remove(o);
+        if (node == null) {
+            return false;
+        }
+        node.removed = true;
+        Node prev = node.prev;
+        Node next = node.next;
+        prev.next = next;
+        if (next != null) {
+            next.prev = prev;
+        } else {
+            tail = prev;
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * First node, or null if empty; walk with {@code next} and skip removed nodes.
+     */
+    Node first() {
+        return head.next;
     }
 }
 
 // STEP 4: Concrete Observer (Subscriber)
 class UserSubscriber implements Observer {
     private String name;
+    private final byte[] prefix;
+    private static final byte[] SEPARATOR = ": ".getBytes(StandardCharsets.UTF_8);
+    private final ConsoleLine line = new ConsoleLine();
 
     public UserSubscriber(String name) {
         this.name = name;
+        this.prefix = (name + " received update from ").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void update(String topic, String message) {
+        update(topic, Payload.of(message));
+    }
+
+    // writes the shared payload bytes straight out; no String is built
+    @Override
+    public void update(String topic, Payload payload) {
+        synchronized (line) {
+            line.reset().put(prefix).put(topic).put(SEPARATOR).put(payload).println(System.out);
+        }
+    }
+}
+
+// STEP 5: Broker with hierarchical topics and wildcards
+// Topics are '/'-separated levels, e.g. "sports/cricket/india". A subscription
+// filter may use '*' for exactly one level and '#' (last level only) for the
+// rest of the topic, including none: "sports/#" matches "sports" and everything
+// under it. Filters live in a trie; the subscriber set resolved for each
+// concrete topic is cached, so publishing to a known topic is one hash lookup
+// plus the deliveries, whatever the total number of subscriptions. A
+// subscribe/unsubscribe only invalidates cached topics under the filter's
+// literal prefix.
+class TopicBroker {
+    private static final Observer[] NONE = new Observer[0];
+
+    // subscription filters, one node per level
+    private final FilterNode filters = new FilterNode();
+    // resolved subscribers per published topic, plus a trie over the same
+    // entries so invalidation can find every topic under a prefix
+    private final Map<String, CachedTopic> cache = new ConcurrentHashMap<>();
+    private final CachedTopic cacheRoot = new CachedTopic();
+    private final ConsoleLine line = new ConsoleLine();
+
+    public synchronized void subscribe(String filter, Observer o) {
+        String[] levels = parseFilter(filter);
+        FilterNode node = filters;
+        for (String level : levels) {
+            node = node.children.computeIfAbsent(level, l -> new FilterNode());
+        }
+        if (!node.subscribers.contains(o)) {
+            node.subscribers.add(o);
+            invalidate(levels);
+        }
+    }
+
+    public synchronized void unsubscribe(String filter, Observer o) {
+        String[] levels = parseFilter(filter);
+        List<FilterNode> path = new ArrayList<>();
+        FilterNode node = filters;
+        path.add(node);
+        for (String level : levels) {
+            node = node.children.get(level);
+            if (node == null) {
+                return;
+            }
+            path.add(node);
+        }
+        if (!node.subscribers.remove(o)) {
+            return;
+        }
+        // prune empty branches so the trie doesn't grow with churn
+        for (int i = levels.length; i > 0 && path.get(i).isEmpty(); i--) {
+            path.get(i - 1).children.remove(levels[i - 1]);
+        }
+        invalidate(levels);
+    }
+
+    public void publish(String topic, String message) {
+        publish(topic, Payload.of(message));
+    }
+
+    public void publish(String topic, Payload payload) {
+        synchronized (line) {
+            line.reset().put("\n[").put(topic).put("] New message: ").put(payload).println(System.out);
+        }
+        for (Observer o : subscribersOf(topic)) {
+            o.update(topic, payload);
+        }
+    }
+
+    // cache hit is lock-free; a miss or a stale entry resolves under the lock
+    Observer[] subscribersOf(String topic) {
+        CachedTopic entry = cache.get(topic);
+        Observer[] resolved = entry != null ? entry.resolved : null;
+        return resolved != null ? resolved : resolve(topic);
+    }
+
+    private synchronized Observer[] resolve(String topic) {
+        String[] levels = topic.split("/", -1);
+        for (String level : levels) {
+            if (level.equals("*") || level.equals("#"))
+                throw new IllegalArgumentException("wildcards are only allowed in subscriptions: " + topic);
+        }
+        CachedTopic entry = cache.get(topic);
+        if (entry == null) {
+            entry = cacheRoot;
+            for (String level : levels) {
+                entry = entry.children.computeIfAbsent(level, l -> new CachedTopic());
+            }
+            cache.put(topic, entry);
+        } else if (entry.resolved != null) {
+            return entry.resolved;
+        }
+        Set<Observer> matched = new LinkedHashSet<>();
+        match(filters, levels, 0, matched);
+        entry.resolved = matched.isEmpty() ? NONE : matched.toArray(NONE);
+        return entry.resolved;
+    }
+
+    private static void match(FilterNode node, String[] levels, int i, Set<Observer> out) {
+        FilterNode rest = node.children.get("#");
+        if (rest != null) {
+            out.addAll(rest.subscribers);
+        }
+        if (i == levels.length) {
+            out.addAll(node.subscribers);
+            return;
+        }
+        FilterNode exact = node.children.get(levels[i]);
+        if (exact != null) {
+            match(exact, levels, i + 1, out);
+        }
+        FilterNode any = node.children.get("*");
+        if (any != null) {
+            match(any, levels, i + 1, out);
+        }
+    }
+
+    // mark every cached topic the filter could match as stale
+    private void invalidate(String[] filterLevels) {
+        CachedTopic entry = cacheRoot;
+        for (String level : filterLevels) {
+            if (level.equals("*") || level.equals("#")) {
+                break;
+            }
+            entry = entry.children.get(level);
+            if (entry == null) {
+                return;
+            }
+        }
+        entry.invalidateAll();
+    }
+
+    private static String[] parseFilter(String filter) {
+        String[] levels = filter.split("/", -1);
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (level.equals("#") && i != levels.length - 1)
+                throw new IllegalArgumentException("'#' must be the last level: " + filter);
+            if (level.length() > 1 && (level.contains("*") || level.contains("#")))
+                throw new IllegalArgumentException("wildcards must be a whole level: " + filter);
+        }
+        return levels;
+    }
+
+    private static final class FilterNode {
+        final Map<String, FilterNode> children = new HashMap<>();
+        final List<Observer> subscribers = new ArrayList<>();
+
+        boolean isEmpty() {
+            return children.isEmpty() && subscribers.isEmpty();
+        }
+    }
+
+    private static final class CachedTopic {
+        final Map<String, CachedTopic> children = new HashMap<>();
+        // null when stale or never published
+        volatile Observer[] resolved;
+
+        void invalidateAll() {
+            resolved = null;
+            for (CachedTopic child : children.values()) {
+                child.invalidateAll();
+            }
+        }
+    }
+}
+
+// STEP 6: Asynchronous mailbox that spills to disk
+// Wrap a slow subscriber in a SpillingMailbox and register the mailbox
+// instead: publish only enqueues, and a dedicated thread delivers to the
+// subscriber. Up to `capacity` messages wait in memory; beyond that they are
+// appended to a spill file, and while the file holds anything every new
+// message goes there too, so delivery order is preserved. The drain thread
+// empties memory first, then streams the file back in chunks, and truncates
+// it once it has caught up. Publishers never block on the subscriber and no
+// message is dropped; the heap cost is bounded by `capacity`.
+class SpillingMailbox implements Observer, AutoCloseable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long CLOSE_TIMEOUT_MILLIS = 30_000;
+
+    private final Observer subscriber;
+    private final int capacity;
+    private final Path spillPath;
+    private final FileChannel spill;
+    private final ArrayDeque<Pending> memory = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final Thread drainer;
+    // guarded by lock
+    private ByteBuffer record = ByteBuffer.allocate(256);
+    private long writePosition;
+    private long readPosition;
+    private long spilledPending;
+    private long spilledBytesTotal;
+    private long delivered;
+    private boolean delivering;
+    private boolean closed;
+
+    public SpillingMailbox(Observer subscriber, int capacity, Path spillDirectory) throws IOException {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.subscriber = subscriber;
+        this.capacity = capacity;
+        this.spillPath = Files.createTempFile(Files.createDirectories(spillDirectory), "mailbox-", ".spill");
+        this.spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.drainer = new Thread(this::drain, "mailbox-" + subscriber);
+        this.drainer.setDaemon(true);
+        this.drainer.start();
     }
 
     @Override
     public void update(String topic, String message) {
-        System.out.println(name + " received update from " + topic + ": " + message);
+        update(topic, Payload.of(message));
+    }
+
+    @Override
+    public void update(String topic, Payload payload) {
+        lock.lock();
+        try {
+            if (closed)
+                throw new IllegalStateException("mailbox is closed");
+            if (spilledPending == 0 && memory.size() < capacity) {
+                memory.add(new Pending(topic, payload));
+            } else {
+                spillWrite(topic, payload);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // record: topic length, topic bytes, payload length, payload bytes
+    private void spillWrite(String topic, Payload payload) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int size = 8 + topicBytes.length + payload.length();
+        if (record.capacity() < size) {
+            record = ByteBuffer.allocate(Math.max(size, record.capacity() * 2));
+        }
+        record.clear();
+        record.putInt(topicBytes.length).put(topicBytes).putInt(payload.length()).put(payload.buffer()).flip();
+        long start = writePosition;
+        try {
+            while (record.hasRemaining()) {
+                writePosition += spill.write(record, writePosition);
+            }
+        } catch (IOException e) {
+            // drop the partial record; the next one overwrites it
+            writePosition = start;
+            throw new IllegalStateException("failed to spill message for " + subscriber, e);
+        }
+        spilledPending++;
+        spilledBytesTotal += size;
+    }
+
+    private void drain() {
+        try {
+            drainLoop();
+        } finally {
+            // after a failure nothing will deliver: refuse new messages and release waiters
+            lock.lock();
+            try {
+                closed = true;
+                delivering = false;
+                drained.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drainLoop() {
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        while (true) {
+            Pending next;
+            long from, to;
+            lock.lock();
+            try {
+                while (memory.isEmpty() && spilledPending == 0) {
+                    delivering = false;
+                    drained.signalAll();
+                    if (closed) {
+                        return;
+                    }
+                    notEmpty.awaitUninterruptibly();
+                }
+                delivering = true;
+                next = memory.poll();
+                from = readPosition;
+                to = writePosition;
+            } finally {
+                lock.unlock();
+            }
+            if (next != null) {
+                deliver(next.topic, next.payload);
+                continue;
+            }
+            // memory is empty and everything newer is behind the file: replay a chunk
+            chunk = readChunk(chunk, from, to);
+            int records = 0;
+            while (chunk.remaining() >= 4) {
+                int start = chunk.position();
+                int topicLength = chunk.getInt(start);
+                if (chunk.remaining() < 8 + topicLength
+                        || chunk.remaining() < 8 + topicLength + chunk.getInt(start + 4 + topicLength)) {
+                    break;
+                }
+                byte[] topicBytes = new byte[topicLength];
+                chunk.position(start + 4);
+                chunk.get(topicBytes);
+                byte[] body = new byte[chunk.getInt()];
+                chunk.get(body);
+                deliver(new String(topicBytes, StandardCharsets.UTF_8), Payload.wrap(ByteBuffer.wrap(body)));
+                records++;
+            }
+            if (records == 0) {
+                // one record larger than the chunk: grow until it fits
+                chunk = ByteBuffer.allocate(chunk.capacity() * 2);
+                continue;
+            }
+            consumed(chunk.position(), records);
+        }
+    }
+
+    private ByteBuffer readChunk(ByteBuffer chunk, long from, long to) {
+        chunk.clear();
+        chunk.limit((int) Math.min(chunk.capacity(), to - from));
+        try {
+            long at = from;
+            while (chunk.hasRemaining()) {
+                int n = spill.read(chunk, at);
+                if (n < 0) {
+                    break;
+                }
+                at += n;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to read spill file for " + subscriber, e);
+        }
+        chunk.flip();
+        return chunk;
+    }
+
+    private void consumed(int bytes, int records) {
+        lock.lock();
+        try {
+            readPosition += bytes;
+            spilledPending -= records;
+            if (spilledPending == 0) {
+                // caught up: reclaim the disk space and go back to memory
+                spill.truncate(0);
+                readPosition = 0;
+                writePosition = 0;
+            }
+        } catch (IOException e) {
+            System.err.printf("Failed to truncate spill file %s: %s%n", spillPath, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliver(String topic, Payload payload) {
+        try {
+            subscriber.update(topic, payload);
+        } catch (Throwable e) {
+            // an Error from one subscriber must not stop delivery of the rest
+            System.err.printf("Subscriber %s failed on %s: %s%n", subscriber, topic, e);
+        }
+        lock.lock();
+        try {
+            delivered++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // messages accepted but not yet delivered
+    public long lag() {
+        lock.lock();
+        try {
+            return memory.size() + spilledPending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // bytes currently waiting in the spill file
+    public long spilledBytes() {
+        lock.lock();
+        try {
+            return writePosition - readPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // bytes ever written to the spill file
+    public long spilledBytesTotal() {
+        lock.lock();
+        try {
+            return spilledBytesTotal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long delivered() {
+        lock.lock();
+        try {
+            return delivered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // wait until every accepted message has been delivered
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (delivering || !memory.isEmpty() || spilledPending > 0) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = drained.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // stop accepting messages, deliver what is queued and delete the spill file; a
+    // subscriber still busy after CLOSE_TIMEOUT_MILLIS loses what it has not received
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            drainer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (drainer.isAlive()) {
+            System.err.printf("%s still delivering after %d ms; closing with %d messages undelivered%n",
+                    this, CLOSE_TIMEOUT_MILLIS, lag());
+        }
+        spill.close();
+        Files.deleteIfExists(spillPath);
+    }
+
+    @Override
+    public String toString() {
+        return "mailbox(" + subscriber + ")";
+    }
+
+    private static final class Pending {
+        final String topic;
+        final Payload payload;
+
+        Pending(String topic, Payload payload) {
+            this.topic = topic;
+            this.payload = payload;
+        }
     }
 }
 
-// STEP 5: Client (Demo)
+// STEP 7: Client (Demo)
 public class NotificationSystem {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         TopicPublisher sports = new TopicPublisher("Sports");
         TopicPublisher tech = new TopicPublisher("Tech");
 
@@ -78,5 +805,54 @@ public class NotificationSystem {
         sports.publish("India won the match!");
         tech.publish("New AI model released!");
         sports.publish("Olympics 2028 announced!");
+
+        // durable log: Dave was offline and catches up from his committed offset
+        try (TopicLog sportsLog = new TopicLog(Files.createTempDirectory("sports-log"),
+                1 << 20, 64L << 20, 24 * 60 * 60 * 1000L, 10)) {
+            sports.enableLog(sportsLog);
+            sports.publish("Semi-final tonight");
+            sports.publish("Final on Sunday");
+            Observer dave = new UserSubscriber("Dave");
+            sports.registerObserver(dave);
+            System.out.println("Dave caught up on " + sports.catchUp("dave", dave) + " messages");
+            sports.removeObserver(dave);
+        } catch (IOException e) {
+            System.err.println("Log unavailable: " + e);
+        }
+
+        // hierarchical topics: one subscription covers a whole subtree
+        TopicBroker broker = new TopicBroker();
+        broker.subscribe("sports/#", alice);
+        broker.subscribe("sports/*/india", bob);
+        broker.subscribe("markets/stocks/AAPL", carol);
+
+        broker.publish("sports/cricket/india", "India won the match!");
+        broker.publish("sports/olympics", "Olympics 2028 announced!");
+        broker.publish("markets/stocks/AAPL", "AAPL up 2%");
+
+        broker.unsubscribe("sports/#", alice);
+        broker.publish("sports/cricket/india", "Series tied 1-1");
+
+        // slow subscriber behind a spilling mailbox: the publisher never waits for it
+        TopicPublisher scores = new TopicPublisher("Scores");
+        Observer slowArchive = (topic, message) -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try (SpillingMailbox archive = new SpillingMailbox(slowArchive, 64, Files.createTempDirectory("spill"))) {
+            scores.registerObserver(archive);
+            long start = System.nanoTime();
+            for (int i = 0; i < 500; i++) {
+                scores.notifyObservers("over " + i);
+            }
+            System.out.printf("%nPublished 500 in %.1f ms; archive lag %d, %d bytes spilled%n",
+                    (System.nanoTime() - start) / 1e6, archive.lag(), archive.spilledBytes());
+            archive.awaitDrained(10, TimeUnit.SECONDS);
+            System.out.printf("Archive drained: %d delivered, %d bytes spilled in total%n",
+                    archive.delivered(), archive.spilledBytesTotal());
+        }
     }
 }
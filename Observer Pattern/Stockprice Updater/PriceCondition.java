@@ -0,0 +1,77 @@
+/**
+ * When a threshold subscription fires. Conditions fire on crossings: a
+ * subscription is woken by the tick that moves the price across its level,
+ * not by every tick that stays beyond it.
+ */
+public final class PriceCondition {
+    enum Kind { ABOVE, BELOW, ENTERS_RANGE, EXITS_RANGE, MOVES_BY_PERCENT }
+
+    final Kind kind;
+    final double low;
+    final double high;
+
+    private PriceCondition(Kind kind, double low, double high) {
+        if (Double.isNaN(low) || Double.isNaN(high))
+            throw new IllegalArgumentException("levels cannot be NaN");
+        if (low > high)
+            throw new IllegalArgumentException("low must not exceed high");
+        this.kind = kind;
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Price rises to or through the level.
+     */
+    public static PriceCondition above(double level) {
+        return new PriceCondition(Kind.ABOVE, level, level);
+    }
+
+    /**
+     * Price falls to or through the level.
+     */
+    public static PriceCondition below(double level) {
+        return new PriceCondition(Kind.BELOW, level, level);
+    }
+
+    /**
+     * Price moves from outside [low, high] to inside it.
+     */
+    public static PriceCondition entersRange(double low, double high) {
+        return new PriceCondition(Kind.ENTERS_RANGE, low, high);
+    }
+
+    /**
+     * Price moves from inside [low, high] to outside it.
+     */
+    public static PriceCondition exitsRange(double low, double high) {
+        return new PriceCondition(Kind.EXITS_RANGE, low, high);
+    }
+
+    /**
+     * Price moves by at least the given percentage, up or down, from the
+     * reference price. The reference is the price at subscription (or the
+     * first tick) and resets to the triggering price each time it fires.
+     */
+    public static PriceCondition movesByPercent(double percent) {
+        if (!(percent > 0))
+            throw new IllegalArgumentException("percent must be positive");
+        return new PriceCondition(Kind.MOVES_BY_PERCENT, percent, percent);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case ABOVE:
+                return "above " + low;
+            case BELOW:
+                return "below " + low;
+            case ENTERS_RANGE:
+                return "enters [" + low + ", " + high + "]";
+            case EXITS_RANGE:
+                return "exits [" + low + ", " + high + "]";
+            default:
+                return "moves " + low + "%";
+        }
+    }
+}
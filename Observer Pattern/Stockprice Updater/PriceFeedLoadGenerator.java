@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for PriceGateway. Publisher connections stream TICK frames
+ * round-robin over a set of symbols as fast as the socket accepts them;
+ * subscriber connections subscribe to every symbol and count what arrives.
+ *
+ * By default it starts an Exchange and a gateway in-process on an ephemeral
+ * localhost port, so it needs nothing else running; the symbols S0, S1, ...
+ * are listed on it first. A gateway it connects to must already list them.
+ *
+ * Usage:
+ *   java PriceFeedLoadGenerator [--connect host:port | --unix /path/to/socket]
+ *       [--symbols 100] [--publishers 2] [--subscribers 4] [--seconds 5]
+ *
+ * With --unix and no gateway listening there, one is started on that path.
+ */
+public class PriceFeedLoadGenerator {
+    private static final int BATCH_FRAMES = 1_024;
+
+    private String connect;
+    private String unixPath;
+    private int symbolCount = 100;
+    private int publisherCount = 2;
+    private int subscriberCount = 4;
+    private int seconds = 5;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private volatile boolean publishing = true;
+
+    public static void main(String[] args) throws Exception {
+        PriceFeedLoadGenerator gen = new PriceFeedLoadGenerator();
+        gen.parse(args);
+        gen.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--connect":
+                    connect = value;
+                    break;
+                case "--unix":
+                    unixPath = value;
+                    break;
+                case "--symbols":
+                    symbolCount = Integer.parseInt(value);
+                    break;
+                case "--publishers":
+                    publisherCount = Integer.parseInt(value);
+                    break;
+                case "--subscribers":
+                    subscriberCount = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+            i++;
+        }
+    }
+
+    private void run() throws Exception {
+        Exchange exchange = null;
+        PriceGateway gateway = null;
+        SocketAddress address;
+        if (connect != null) {
+            int colon = connect.lastIndexOf(':');
+            address = new InetSocketAddress(connect.substring(0, colon), Integer.parseInt(connect.substring(colon + 1)));
+        } else if (unixPath != null && Files.exists(Paths.get(unixPath))) {
+            address = UnixDomainSocketAddress.of(unixPath);
+        } else {
+            exchange = new Exchange();
+            gateway = new PriceGateway(exchange, unixPath != null
+                    ? UnixDomainSocketAddress.of(unixPath)
+                    : new InetSocketAddress("127.0.0.1", 0));
+            address = gateway.localAddress();
+        }
+        System.out.printf("load: %d publishers, %d subscribers, %d symbols, %ds against %s%n",
+                publisherCount, subscriberCount, symbolCount, seconds, address);
+
+        long[] symbolKeys = new long[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbolKeys[i] = TickJournal.symbolKey("S" + i);
+            if (exchange != null) {
+                // the gateway only routes listed symbols
+                exchange.list("S" + i);
+            }
+        }
+
+        List<Thread> subscribers = new ArrayList<>();
+        for (int i = 0; i < subscriberCount; i++) {
+            SocketChannel channel = open(address);
+            subscribe(channel, symbolKeys);
+            Thread t = new Thread(() -> consume(channel), "load-subscriber-" + i);
+            t.setDaemon(true);
+            t.start();
+            subscribers.add(t);
+        }
+        // let the subscriptions land before ticks flow
+        Thread.sleep(200);
+
+        List<Thread> publishers = new ArrayList<>();
+        for (int i = 0; i < publisherCount; i++) {
+            SocketChannel channel = open(address);
+            int offset = i;
+            Thread t = new Thread(() -> produce(channel, symbolKeys, offset), "load-publisher-" + i);
+            t.setDaemon(true);
+            t.start();
+            publishers.add(t);
+        }
+
+        long start = System.nanoTime();
+        long lastSent = 0, lastReceived = 0;
+        for (int s = 1; s <= seconds; s++) {
+            Thread.sleep(1_000);
+            long nowSent = sent.sum(), nowReceived = received.sum();
+            System.out.printf(Locale.ROOT, "  %2ds  sent %,12d/s  received %,12d/s%n",
+                    s, nowSent - lastSent, nowReceived - lastReceived);
+            lastSent = nowSent;
+            lastReceived = nowReceived;
+        }
+        publishing = false;
+        for (Thread t : publishers) {
+            t.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        // give in-flight frames a moment to arrive
+        Thread.sleep(500);
+
+        System.out.printf(Locale.ROOT, "sent %,d ticks (%,.0f/s), received %,d frames (%,.0f/s)%n",
+                sent.sum(), sent.sum() / elapsed, received.sum(), received.sum() / elapsed);
+        if (gateway != null) {
+            System.out.printf(Locale.ROOT, "gateway: in %,d, rejected %,d, out %,d, dropped %,d%n",
+                    gateway.ticksIn(), gateway.rejected(), gateway.framesOut(), gateway.framesDropped());
+            gateway.close();
+            exchange.shutdown(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static SocketChannel open(SocketAddress address) throws IOException {
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        channel.connect(address);
+        return channel;
+    }
+
+    private static void subscribe(SocketChannel channel, long[] symbolKeys) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocateDirect(symbolKeys.length * PriceGateway.FRAME_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (long key : symbolKeys) {
+            putFrame(buf, PriceGateway.SUBSCRIBE, key, 0);
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private void produce(SocketChannel channel, long[] symbolKeys, int offset) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(BATCH_FRAMES * PriceGateway.FRAME_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        long n = offset;
+        try {
+            while (publishing) {
+                buf.clear();
+                for (int i = 0; i < BATCH_FRAMES; i++, n++) {
+                    // a cent-scale walk around 100.00
+                    putFrame(buf, PriceGateway.TICK, symbolKeys[(int) (n % symbolKeys.length)], 10_000 + (n & 0xFF));
+                }
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                sent.add(BATCH_FRAMES);
+            }
+            channel.close();
+        } catch (IOException e) {
+            System.err.printf("publisher failed: %s%n", e);
+        }
+    }
+
+    private void consume(SocketChannel channel) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (true) {
+                int n = channel.read(buf);
+                if (n < 0) {
+                    return;
+                }
+                int frames = buf.position() / PriceGateway.FRAME_SIZE;
+                received.add(frames);
+                buf.limit(buf.position()).position(frames * PriceGateway.FRAME_SIZE);
+                buf.compact();
+            }
+        } catch (IOException e) {
+            // gateway closed the connection
+        }
+    }
+
+    private static void putFrame(ByteBuffer buf, byte type, long symbolKey, long price) {
+        int at = buf.position();
+        buf.putLong(at + PriceGateway.TYPE_OFFSET, type)
+                .putLong(at + PriceGateway.SYMBOL_OFFSET, symbolKey)
+                .putLong(at + PriceGateway.PRICE_OFFSET, price);
+        buf.position(at + PriceGateway.FRAME_SIZE);
+    }
+}
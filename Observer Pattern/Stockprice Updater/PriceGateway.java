@@ -0,0 +1,488 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Network ingestion and fan-out for an Exchange over a compact binary protocol,
+ * on TCP or Unix-domain sockets.
+ *
+ * Every frame is 24 bytes, little-endian:
+ * <pre>
+ *   0  type     1 byte  (TICK, SUBSCRIBE, UNSUBSCRIBE), then 7 reserved bytes
+ *   8  symbol   8 bytes TickJournal.symbolKey packing
+ *   16 price    8 bytes scaled long in the stock's PriceScale (TICK only)
+ * </pre>
+ * Publishers send TICK frames, which are decoded in place from a direct
+ * buffer and routed to the symbol's stock. Subscribers send SUBSCRIBE frames
+ * and receive TICK frames for those symbols. Only symbols already listed on
+ * the exchange are served; frames for any other symbol are counted as
+ * rejected, so clients cannot grow the exchange one made-up symbol at a time.
+ *
+ * One selector thread does all socket I/O. Outbound frames are appended to a
+ * per-connection direct buffer by whichever thread delivers the tick; the
+ * selector thread flushes everything accumulated in one write, so a busy
+ * subscriber gets many frames per syscall. A subscriber that cannot keep up
+ * fills its buffer and further frames for it are dropped and counted, so one
+ * slow reader never stalls the exchange.
+ */
+public class PriceGateway implements AutoCloseable {
+    public static final int FRAME_SIZE = 24;
+    public static final byte TICK = 1;
+    public static final byte SUBSCRIBE = 2;
+    public static final byte UNSUBSCRIBE = 3;
+    static final int TYPE_OFFSET = 0;
+    static final int SYMBOL_OFFSET = 8;
+    static final int PRICE_OFFSET = 16;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Exchange exchange;
+    private final int sendBufferSize;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    // socket file to remove on close; null for TCP
+    private final Path socketPath;
+    private final Thread loop;
+    private final Consumer<SelectionKey> handler = this::handle;
+    private final SymbolTable symbols = new SymbolTable();
+    private final ConcurrentLinkedQueue<Connection> flushQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final List<Connection> connections = new ArrayList<>();
+    private volatile boolean running = true;
+
+    // written by the selector thread only
+    private volatile long ticksIn;
+    private volatile long rejected;
+    private final LongAdder framesOut = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+
+    /**
+     * Bind and start serving with 256 KB of send buffer per connection.
+     *
+     * @param address an InetSocketAddress (port 0 for ephemeral) or a UnixDomainSocketAddress
+     */
+    public PriceGateway(Exchange exchange, SocketAddress address) throws IOException {
+        this(exchange, address, 256 * 1024);
+    }
+
+    /**
+     * @param sendBufferSize outbound bytes buffered per subscriber before frames are dropped
+     */
+    public PriceGateway(Exchange exchange, SocketAddress address, int sendBufferSize) throws IOException {
+        if (sendBufferSize < FRAME_SIZE)
+            throw new IllegalArgumentException("sendBufferSize must hold at least one frame");
+        this.exchange = exchange;
+        this.sendBufferSize = sendBufferSize;
+        this.selector = Selector.open();
+        if (address instanceof UnixDomainSocketAddress) {
+            // a stale socket file from an earlier run would make bind fail
+            this.socketPath = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(socketPath);
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.socketPath = null;
+            this.server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        this.loop = new Thread(this::run, "price-gateway");
+        this.loop.setDaemon(true);
+        this.loop.start();
+    }
+
+    /**
+     * The bound address; use it to find the port after binding port 0.
+     */
+    public SocketAddress localAddress() throws IOException {
+        return server.getLocalAddress();
+    }
+
+    /**
+     * TICK frames routed to stocks so far.
+     */
+    public long ticksIn() {
+        return ticksIn;
+    }
+
+    /**
+     * Frames refused: unlisted symbols, or prices off the stock's tick.
+     */
+    public long rejected() {
+        return rejected;
+    }
+
+    /**
+     * Frames queued to subscribers so far.
+     */
+    public long framesOut() {
+        return framesOut.sum();
+    }
+
+    /**
+     * Frames dropped because a subscriber's send buffer was full.
+     */
+    public long framesDropped() {
+        return framesDropped.sum();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(handler);
+                wakeupPending.set(false);
+                Connection c;
+                while ((c = flushQueue.poll()) != null) {
+                    c.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.printf("Price gateway stopped: %s%n", e);
+        } finally {
+            for (Connection c : new ArrayList<>(connections)) {
+                c.close();
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Connection c = (Connection) key.attachment();
+        if (key.isReadable()) {
+            c.read();
+        }
+        if (key.isValid() && key.isWritable()) {
+            c.flush();
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                if (channel.getLocalAddress() instanceof InetSocketAddress) {
+                    // batching is done here; don't let Nagle delay the flushed batch further
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                Connection c = new Connection(channel);
+                c.key = channel.register(selector, SelectionKey.OP_READ, c);
+                connections.add(c);
+            }
+        } catch (IOException e) {
+            System.err.printf("Price gateway accept failed: %s%n", e);
+        }
+    }
+
+    // selector thread; null if the symbol is not listed. Only listed symbols are
+    // cached, so the table is bounded by the exchange's listings
+    private Stock stockFor(long symbolKey) {
+        Stock stock = symbols.get(symbolKey);
+        if (stock == null) {
+            stock = exchange.get(TickJournal.symbolName(symbolKey));
+            if (stock != null) {
+                symbols.put(symbolKey, stock);
+            }
+        }
+        return stock;
+    }
+
+    private void wakeup() {
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Stop serving and close every connection. Subscriptions are removed from
+     * their stocks; the exchange itself is left running.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join(1_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (socketPath != null) {
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    /**
+     * One client socket; may publish, subscribe, or both.
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        // guarded by this: filled by delivering threads, drained by the selector thread
+        final ByteBuffer out = ByteBuffer.allocateDirect(sendBufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        final List<Subscription> subscriptions = new ArrayList<>();
+        SelectionKey key;
+        boolean queued;
+        boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            int n;
+            try {
+                n = channel.read(in);
+            } catch (IOException e) {
+                n = -1;
+            }
+            if (n < 0) {
+                close();
+                return;
+            }
+            int end = in.position();
+            int at = 0;
+            for (; end - at >= FRAME_SIZE; at += FRAME_SIZE) {
+                if (!onFrame(in.get(at + TYPE_OFFSET), in.getLong(at + SYMBOL_OFFSET), in.getLong(at + PRICE_OFFSET))) {
+                    close();
+                    return;
+                }
+            }
+            // keep a partial frame for the next read
+            in.limit(end).position(at);
+            in.compact();
+        }
+
+        private boolean onFrame(byte type, long symbolKey, long price) {
+            Stock stock;
+            try {
+                stock = stockFor(symbolKey);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            if (stock == null) {
+                if (type != TICK && type != SUBSCRIBE && type != UNSUBSCRIBE) {
+                    return false;
+                }
+                rejected++;
+                return true;
+            }
+            switch (type) {
+                case TICK:
+                    try {
+                        stock.updateScaledPrice(price);
+                        ticksIn++;
+                    } catch (IllegalArgumentException | IllegalStateException e) {
+                        // off-tick price, or the exchange is shutting down
+                        rejected++;
+                    }
+                    return true;
+                case SUBSCRIBE:
+                    // a repeated SUBSCRIBE is a no-op; a second observer would send every tick twice
+                    if (indexOf(symbolKey) < 0) {
+                        Subscription sub = new Subscription(this, symbolKey);
+                        subscriptions.add(sub);
+                        stock.registerObserver(sub);
+                    }
+                    return true;
+                case UNSUBSCRIBE:
+                    int i = indexOf(symbolKey);
+                    if (i >= 0) {
+                        stock.removeObserver(subscriptions.remove(i));
+                    }
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        // at most one subscription per symbol
+        private int indexOf(long symbolKey) {
+            for (int i = 0; i < subscriptions.size(); i++) {
+                if (subscriptions.get(i).symbolKey == symbolKey) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // any delivering thread
+        void send(long symbolKey, long price) {
+            boolean enqueue;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (out.remaining() < FRAME_SIZE) {
+                    framesDropped.increment();
+                    return;
+                }
+                int at = out.position();
+                out.putLong(at, TICK).putLong(at + SYMBOL_OFFSET, symbolKey).putLong(at + PRICE_OFFSET, price);
+                out.position(at + FRAME_SIZE);
+                enqueue = !queued;
+                queued = true;
+            }
+            framesOut.increment();
+            if (enqueue) {
+                flushQueue.offer(this);
+                wakeup();
+            }
+        }
+
+        // selector thread
+        void flush() {
+            synchronized (this) {
+                queued = false;
+                if (closed) {
+                    return;
+                }
+                try {
+                    out.flip();
+                    channel.write(out);
+                    out.compact();
+                } catch (IOException e) {
+                    closed = true;
+                }
+                if (!closed) {
+                    // leftovers go out when the socket drains
+                    key.interestOps(out.position() > 0
+                            ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                            : SelectionKey.OP_READ);
+                    return;
+                }
+            }
+            close();
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            for (Subscription sub : subscriptions) {
+                Stock stock = symbols.get(sub.symbolKey);
+                if (stock != null) {
+                    stock.removeObserver(sub);
+                }
+            }
+            subscriptions.clear();
+            connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Registered on a stock for one remote subscriber; forwards ticks as frames.
+     */
+    private static final class Subscription implements PriceObserver {
+        final Connection connection;
+        final long symbolKey;
+
+        Subscription(Connection connection, long symbolKey) {
+            this.connection = connection;
+            this.symbolKey = symbolKey;
+        }
+
+        @Override
+        public void onPriceUpdate(Stock stock, double price) {
+            connection.send(symbolKey, stock.getScale().fromDouble(price));
+        }
+
+        @Override
+        public void onScaledPriceUpdate(Stock stock, long scaledPrice) {
+            connection.send(symbolKey, scaledPrice);
+        }
+
+        @Override
+        public String toString() {
+            return "remote:" + TickJournal.symbolName(symbolKey);
+        }
+    }
+
+    /**
+     * Open-addressing map from symbol key to Stock, so routing a frame boxes
+     * nothing. Selector thread only; key 0 never occurs (symbols are non-empty).
+     */
+    private static final class SymbolTable {
+        private long[] keys = new long[1024];
+        private Stock[] values = new Stock[1024];
+        private int size;
+
+        Stock get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        void put(long key, Stock value) {
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                size++;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            Stock[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Stock[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
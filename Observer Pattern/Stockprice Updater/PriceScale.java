@@ -0,0 +1,246 @@
+/**
+ * Fixed-point price representation: a price is a plain {@code long} counting
+ * units of 10^-decimals, constrained to multiples of a tick size. Arithmetic
+ * is exact (overflow throws instead of wrapping), nothing is boxed, and the
+ * formatting methods write into caller-supplied buffers so a hot path can
+ * print prices without creating garbage.
+ *
+ * Example: with {@code PriceScale.of("0.05")} the price 101.35 is the long
+ * 10135 (decimals 2, tick 5).
+ */
+public final class PriceScale {
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L };
+
+    /** Two decimals, one-cent tick: the default for Stock. */
+    public static final PriceScale CENTS = new PriceScale(2, 1);
+
+    private final int decimals;
+    private final long factor;
+    private final long tick;
+
+    private PriceScale(int decimals, long tick) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length)
+            throw new IllegalArgumentException("decimals must be between 0 and " + (POWERS_OF_TEN.length - 1));
+        if (tick <= 0)
+            throw new IllegalArgumentException("tick must be positive");
+        this.decimals = decimals;
+        this.factor = POWERS_OF_TEN[decimals];
+        this.tick = tick;
+    }
+
+    /**
+     * @param decimals  digits after the decimal point
+     * @param tickUnits tick size in units of 10^-decimals
+     */
+    public static PriceScale of(int decimals, long tickUnits) {
+        return new PriceScale(decimals, tickUnits);
+    }
+
+    /**
+     * Scale whose decimals and tick come from a tick size such as "0.01" or "0.0005".
+     */
+    public static PriceScale of(String tickSize) {
+        int dot = tickSize.indexOf('.');
+        int decimals = dot < 0 ? 0 : tickSize.length() - dot - 1;
+        return new PriceScale(decimals, new PriceScale(decimals, 1).parse(tickSize));
+    }
+
+    public int decimals() {
+        return decimals;
+    }
+
+    /**
+     * Tick size in scaled units.
+     */
+    public long tick() {
+        return tick;
+    }
+
+    /**
+     * Nearest on-tick scaled price to a double, for feeds that still send doubles.
+     * Throws ArithmeticException if the scaled price does not fit in a long.
+     */
+    public long fromDouble(double price) {
+        if (Double.isNaN(price) || Double.isInfinite(price))
+            throw new IllegalArgumentException("price must be finite: " + price);
+        double units = Math.rint(price * factor);
+        // Math.round would saturate at Long.MIN_VALUE / MAX_VALUE instead of failing
+        if (units <= Long.MIN_VALUE || units >= Long.MAX_VALUE)
+            throw new ArithmeticException("price out of range: " + price);
+        return roundToTick(Math.round(price * factor));
+    }
+
+    /**
+     * Smallest scaled value at or above a double level (largest at or below
+     * when {@code roundUp} is false), ignoring the tick. Representation noise
+     * such as 0.29 * 100 = 28.999999999999996 is treated as exact.
+     */
+    long levelFromDouble(double level, boolean roundUp) {
+        if (Double.isNaN(level) || Double.isInfinite(level))
+            throw new IllegalArgumentException("level must be finite: " + level);
+        double units = level * factor;
+        double nearest = Math.rint(units);
+        if (Math.abs(units - nearest) < 1e-6) {
+            return (long) nearest;
+        }
+        return (long) (roundUp ? Math.ceil(units) : Math.floor(units));
+    }
+
+    public double toDouble(long scaled) {
+        return (double) scaled / factor;
+    }
+
+    /**
+     * Round half-up to the nearest multiple of the tick.
+     */
+    public long roundToTick(long scaled) {
+        if (tick == 1) {
+            return scaled;
+        }
+        return Math.multiplyExact(Math.floorDiv(Math.addExact(scaled, tick / 2), tick), tick);
+    }
+
+    public boolean isOnTick(long scaled) {
+        return scaled % tick == 0;
+    }
+
+    public long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Price times a whole quantity, e.g. notional; stays in this scale.
+     */
+    public long multiply(long scaled, long quantity) {
+        return Math.multiplyExact(scaled, quantity);
+    }
+
+    /**
+     * Parse a decimal string exactly. Rejects more decimals than the scale
+     * holds (unless they are zeros) and prices that are not on the tick.
+     */
+    public long parse(CharSequence text) {
+        int len = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (len > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+        if (i == len)
+            throw new NumberFormatException("not a price: " + text);
+        long value = 0;
+        int fractionDigits = -1;
+        boolean anyDigit = false;
+        try {
+            for (; i < len; i++) {
+                char c = text.charAt(i);
+                if (c == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                    continue;
+                }
+                if (c < '0' || c > '9')
+                    throw new NumberFormatException("not a price: " + text);
+                anyDigit = true;
+                if (fractionDigits >= 0 && fractionDigits == decimals) {
+                    if (c != '0')
+                        throw new NumberFormatException("more than " + decimals + " decimals: " + text);
+                    continue;
+                }
+                value = Math.addExact(Math.multiplyExact(value, 10), c - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            }
+            if (!anyDigit)
+                throw new NumberFormatException("not a price: " + text);
+            value = Math.multiplyExact(value, POWERS_OF_TEN[decimals - Math.max(fractionDigits, 0)]);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("price out of range: " + text);
+        }
+        long scaled = negative ? -value : value;
+        if (!isOnTick(scaled))
+            throw new NumberFormatException("price not on tick " + format(tick) + ": " + text);
+        return scaled;
+    }
+
+    /**
+     * Append the decimal form of a scaled price; allocation-free.
+     */
+    public StringBuilder appendTo(StringBuilder sb, long scaled) {
+        long whole = scaled / factor;
+        long fraction = Math.abs(scaled % factor);
+        if (scaled < 0 && whole == 0) {
+            sb.append('-');
+        }
+        sb.append(whole);
+        if (decimals > 0) {
+            sb.append('.');
+            for (long p = factor / 10; p > 1 && fraction < p; p /= 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb;
+    }
+
+    /**
+     * Write the decimal form of a scaled price as ASCII into {@code dst}
+     * starting at {@code offset}; allocation-free.
+     *
+     * @return offset just past the last byte written
+     */
+    public int format(long scaled, byte[] dst, int offset) {
+        boolean negative = scaled < 0;
+        // digits are produced from the negative value so Long.MIN_VALUE needs no special case
+        long v = negative ? scaled : -scaled;
+        int digits = 1;
+        for (long t = v / 10; t != 0; t /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, decimals + 1);
+        int length = digits + (negative ? 1 : 0) + (decimals > 0 ? 1 : 0);
+        int pos = offset + length;
+        for (int i = 0; i < digits; i++) {
+            if (i == decimals && decimals > 0) {
+                dst[--pos] = '.';
+            }
+            dst[--pos] = (byte) ('0' - v % 10);
+            v /= 10;
+        }
+        if (negative) {
+            dst[--pos] = '-';
+        }
+        return offset + length;
+    }
+
+    /**
+     * Decimal form of a scaled price. Allocates; use the buffer variants on hot paths.
+     */
+    public String format(long scaled) {
+        return appendTo(new StringBuilder(24), scaled).toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PriceScale))
+            return false;
+        PriceScale other = (PriceScale) o;
+        return decimals == other.decimals && tick == other.tick;
+    }
+
+    @Override
+    public int hashCode() {
+        return decimals * 31 + Long.hashCode(tick);
+    }
+
+    @Override
+    public String toString() {
+        return "PriceScale(tick " + format(tick) + ")";
+    }
+}
@@ -0,0 +1,324 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Disruptor-style dispatcher: a preallocated ring of tick slots, a single
+ * publishing thread and one consumer thread that walks the slots in place and
+ * calls each observer. Publishing claims a sequence, writes the slot and
+ * advances the cursor — no lambda, task or queue node is allocated per tick.
+ *
+ * Single writer: every Stock using this dispatcher must be updated from the
+ * same thread. Several stocks may share one instance if they share a feed
+ * thread; deliveries are then in publish order across all of them. The first
+ * publishing thread owns the ring until it terminates; a publish from any
+ * other thread throws IllegalStateException.
+ */
+public class RingBufferDispatcher implements PriceDispatcher {
+    private final TickSlot[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    // last published sequence; written by the publisher, read by the consumer
+    private final Sequence cursor = new Sequence();
+    // last consumed sequence; gates the publisher so it never laps the consumer
+    private final Sequence consumed = new Sequence();
+
+    // publisher-private state (single writer)
+    private long nextSequence = 0;
+    private long cachedGate = -1;
+    // the single writer, set by the first publish
+    private volatile Thread publisher;
+
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    public RingBufferDispatcher(int bufferSize, WaitStrategy waitStrategy) {
+        if (Integer.bitCount(bufferSize) != 1)
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        if (waitStrategy == null)
+            throw new IllegalArgumentException("waitStrategy cannot be null");
+        this.slots = new TickSlot[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            slots[i] = new TickSlot();
+        }
+        this.mask = bufferSize - 1;
+        this.waitStrategy = waitStrategy;
+        this.consumer = new Thread(this::consume, "ring-dispatcher");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Claim, fill and publish one slot. Spins briefly if the ring is full.
+     */
+    @Override
+    public void dispatch(Stock stock, long price) {
+        publish(stock, null, price);
+    }
+
+    /**
+     * Threshold alerts ride the ring too, so they reach the observer on the
+     * consumer thread in publish order with its ticks.
+     */
+    @Override
+    public void dispatchTo(Stock stock, PriceObserver observer, long price) {
+        publish(stock, observer, price);
+    }
+
+    private void publish(Stock stock, PriceObserver target, long price) {
+        if (!running)
+            throw new IllegalStateException("dispatcher is shut down");
+        Thread current = Thread.currentThread();
+        if (publisher != current) {
+            claimPublisher(current);
+        }
+        long sequence = nextSequence;
+        long wrapPoint = sequence - slots.length;
+        if (wrapPoint > cachedGate) {
+            long gate;
+            while (wrapPoint > (gate = consumed.get())) {
+                // the consumer stops at shutdown, so the ring may never free up
+                if (!running)
+                    throw new IllegalStateException("dispatcher is shut down");
+                LockSupport.parkNanos(1L);
+            }
+            cachedGate = gate;
+        }
+        nextSequence = sequence + 1;
+        TickSlot slot = slots[(int) sequence & mask];
+        slot.stock = stock;
+        slot.target = target;
+        slot.price = price;
+        slot.stamp = stock.publishStamp();
+        cursor.setRelease(sequence);
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    // a terminated owner hands over: its writes are visible once isAlive() is false
+    private synchronized void claimPublisher(Thread current) {
+        Thread owner = publisher;
+        if (owner != null && owner != current && owner.isAlive())
+            throw new IllegalStateException("single-writer ring already published to by " + owner.getName()
+                    + "; cannot publish from " + current.getName());
+        publisher = current;
+    }
+
+    private void consume() {
+        long next = 0;
+        while (true) {
+            long available = waitStrategy.waitFor(next, cursor, this);
+            if (available < next) {
+                // alerted with nothing left to drain
+                return;
+            }
+            for (long s = next; s <= available; s++) {
+                TickSlot slot = slots[(int) s & mask];
+                Stock stock = slot.stock;
+                if (slot.target != null) {
+                    stock.recordEnqueued(slot.target, slot.stamp);
+                    stock.deliver(slot.target, slot.price, slot.stamp);
+                    continue;
+                }
+                for (PriceObserver observer : stock.observers()) {
+                    // queueing happens per tick, not per observer: in-flight covers the callback only
+                    stock.recordEnqueued(observer, slot.stamp);
+                    stock.deliver(observer, slot.price, slot.stamp);
+                }
+            }
+            consumed.setRelease(available);
+            next = available + 1;
+        }
+    }
+
+    /**
+     * Ticks published but not yet consumed; the ring's queue depth.
+     */
+    public long backlog() {
+        return cursor.get() - consumed.get();
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop accepting ticks, let the consumer drain what was published and
+     * wait up to the timeout for it to finish.
+     */
+    @Override
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+        waitStrategy.signalAllWhenBlocking();
+        consumer.join(Math.max(1, unit.toMillis(timeout)));
+        if (consumer.isAlive()) {
+            consumer.interrupt();
+        }
+    }
+
+    /**
+     * Reusable event holder; fields are overwritten in place on each lap.
+     */
+    private static final class TickSlot {
+        Stock stock;
+        // the one observer to notify, or null for all of the stock's observers
+        PriceObserver target;
+        long price;
+        long stamp;
+    }
+
+    /**
+     * Sequence counter padded on both sides (via the class hierarchy, which
+     * the JVM lays out in order) so the publisher's cursor and the consumer's
+     * sequence do not share a cache line.
+     */
+    static final class Sequence extends SequenceRhsPadding {
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        Sequence() {
+            value = -1;
+        }
+
+        long get() {
+            return value;
+        }
+
+        void setRelease(long v) {
+            VALUE.setRelease(this, v);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class SequenceLhsPadding {
+        protected long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    private static class SequenceValue extends SequenceLhsPadding {
+        protected volatile long value;
+    }
+
+    @SuppressWarnings("unused")
+    private static class SequenceRhsPadding extends SequenceValue {
+        protected long p9, p10, p11, p12, p13, p14, p15;
+    }
+
+    /**
+     * How the consumer waits for the cursor to reach a sequence. Trades CPU
+     * for latency: busy-spin is lowest latency, blocking is cheapest on CPU.
+     */
+    public interface WaitStrategy {
+        /**
+         * Wait until {@code cursor >= sequence} and return the highest
+         * available sequence. Returns a value below {@code sequence} once the
+         * dispatcher is shut down and everything published has been drained.
+         */
+        long waitFor(long sequence, Sequence cursor, RingBufferDispatcher ring);
+
+        /**
+         * Wake waiters after a publish; only blocking strategies need this.
+         */
+        default void signalAllWhenBlocking() {
+        }
+
+        static WaitStrategy busySpin() {
+            return (sequence, cursor, ring) -> {
+                while (cursor.get() < sequence && ring.isRunning()) {
+                    Thread.onSpinWait();
+                }
+                return cursor.get();
+            };
+        }
+
+        static WaitStrategy yielding() {
+            return (sequence, cursor, ring) -> {
+                int spins = 100;
+                while (cursor.get() < sequence && ring.isRunning()) {
+                    if (spins > 0) {
+                        spins--;
+                        Thread.onSpinWait();
+                    } else {
+                        Thread.yield();
+                    }
+                }
+                return cursor.get();
+            };
+        }
+
+        static WaitStrategy sleeping(long sleepNanos) {
+            return (sequence, cursor, ring) -> {
+                int spins = 200;
+                while (cursor.get() < sequence && ring.isRunning()) {
+                    if (spins > 100) {
+                        spins--;
+                        Thread.onSpinWait();
+                    } else if (spins > 0) {
+                        spins--;
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(sleepNanos);
+                    }
+                }
+                return cursor.get();
+            };
+        }
+
+        static WaitStrategy blocking() {
+            return new BlockingWaitStrategy();
+        }
+    }
+
+    /**
+     * Parks the consumer on a condition; the publisher only takes the lock
+     * when the consumer has announced that it is waiting.
+     */
+    private static final class BlockingWaitStrategy implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+        private volatile boolean waiting;
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, RingBufferDispatcher ring) {
+            if (cursor.get() < sequence) {
+                lock.lock();
+                try {
+                    while (cursor.get() < sequence && ring.isRunning()) {
+                        waiting = true;
+                        // re-check after announcing, then wait with a bound in case a signal raced
+                        if (cursor.get() < sequence && ring.isRunning()) {
+                            published.awaitNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    waiting = false;
+                    lock.unlock();
+                }
+            }
+            return cursor.get();
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+            if (waiting) {
+                lock.lock();
+                try {
+                    published.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
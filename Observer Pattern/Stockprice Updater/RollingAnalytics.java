@@ -0,0 +1,342 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling statistics for any number of stocks, updated in O(1) per tick.
+ *
+ * Per symbol it keeps the last {@code window} prices in a primitive ring and
+ * maintains the running sum and sum of squares (for SMA and variance), an EMA,
+ * rolling min/max via monotonic deques, and OHLC bars of a fixed length. The
+ * tick path allocates nothing once a symbol has been seen.
+ *
+ * Each symbol has one writer at a time. Readers on other threads never take
+ * that lock: the writer bumps a per-symbol version around every update
+ * (a seqlock) and {@link #snapshot(String)} retries until it reads a stable
+ * copy.
+ *
+ * Register it as a PriceObserver, or as a BatchPriceObserver to process a
+ * whole batch under one lock acquisition.
+ */
+public class RollingAnalytics implements PriceObserver, BatchPriceObserver {
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(Series.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int window;
+    private final long barNanos;
+    private final int barHistory;
+    private final double alpha;
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+
+    /**
+     * @param window     ticks in the SMA / variance / min / max window; the EMA uses alpha 2 / (window + 1)
+     * @param barLength  OHLC bar length
+     * @param unit       unit of barLength
+     * @param barHistory completed bars kept per symbol
+     */
+    public RollingAnalytics(int window, long barLength, TimeUnit unit, int barHistory) {
+        if (window <= 0)
+            throw new IllegalArgumentException("window must be positive");
+        if (barLength <= 0)
+            throw new IllegalArgumentException("barLength must be positive");
+        if (barHistory <= 0)
+            throw new IllegalArgumentException("barHistory must be positive");
+        this.window = window;
+        this.barNanos = unit.toNanos(barLength);
+        this.barHistory = barHistory;
+        this.alpha = 2.0 / (window + 1);
+    }
+
+    @Override
+    public void onPriceUpdate(Stock stock, double price) {
+        onScaledPriceUpdate(stock, stock.getScale().fromDouble(price));
+    }
+
+    @Override
+    public void onScaledPriceUpdate(Stock stock, long scaledPrice) {
+        Series s = seriesFor(stock);
+        long now = Stock.epochNanos();
+        synchronized (s) {
+            s.beginWrite();
+            s.add(scaledPrice, now);
+            s.endWrite();
+        }
+    }
+
+    @Override
+    public void onPriceBatch(Stock stock, long[] prices, long[] timestamps, int count) {
+        Series s = seriesFor(stock);
+        synchronized (s) {
+            s.beginWrite();
+            for (int i = 0; i < count; i++) {
+                s.add(prices[i], timestamps[i]);
+            }
+            s.endWrite();
+        }
+    }
+
+    private Series seriesFor(Stock stock) {
+        Series s = series.get(stock.getSymbol());
+        return s != null ? s : series.computeIfAbsent(stock.getSymbol(), sym -> new Series(sym, stock.getScale()));
+    }
+
+    /**
+     * Consistent copy of one symbol's statistics, or null if it has not ticked.
+     * Never blocks the writer; retries while an update is in progress.
+     */
+    public Snapshot snapshot(String symbol) {
+        Series s = series.get(symbol);
+        return s != null ? s.snapshot() : null;
+    }
+
+    /**
+     * Completed bars for one symbol, oldest first; empty if none have closed.
+     */
+    public Bar[] bars(String symbol) {
+        Series s = series.get(symbol);
+        return s != null ? s.completedBars() : new Bar[0];
+    }
+
+    @Override
+    public String toString() {
+        return "RollingAnalytics";
+    }
+
+    /**
+     * State for one symbol. Written under its own monitor; read lock-free.
+     */
+    private final class Series {
+        final String symbol;
+        final PriceScale scale;
+        @SuppressWarnings("unused") // accessed through VERSION
+        private volatile long version;
+
+        // window ring, indexed by tick sequence & mask
+        final long[] prices;
+        final int mask;
+        long ticks;
+
+        // sums of deviations from the first price, so squares stay small and exact
+        // as long as the price stays within about 3e9 / sqrt(window) units of it
+        long base;
+        long sum;
+        long sumSquares;
+        double ema;
+        long last;
+
+        // monotonic deques of tick sequences: front is the window min / max
+        final long[] minQueue;
+        final long[] maxQueue;
+        long minHead, minTail, maxHead, maxTail;
+
+        // current bar
+        long barStart = Long.MIN_VALUE;
+        long open, high, low, close, barTicks;
+
+        // completed bars, ring of barHistory
+        final long[] barStarts, opens, highs, lows, closes, counts;
+        long barsClosed;
+
+        Series(String symbol, PriceScale scale) {
+            this.symbol = symbol;
+            this.scale = scale;
+            int capacity = Integer.highestOneBit(Math.max(1, window - 1)) << 1;
+            this.prices = new long[capacity];
+            this.mask = capacity - 1;
+            this.minQueue = new long[capacity];
+            this.maxQueue = new long[capacity];
+            this.barStarts = new long[barHistory];
+            this.opens = new long[barHistory];
+            this.highs = new long[barHistory];
+            this.lows = new long[barHistory];
+            this.closes = new long[barHistory];
+            this.counts = new long[barHistory];
+        }
+
+        void beginWrite() {
+            VERSION.setOpaque(this, (long) VERSION.getOpaque(this) + 1);
+            VarHandle.storeStoreFence();
+        }
+
+        void endWrite() {
+            VERSION.setRelease(this, (long) VERSION.getOpaque(this) + 1);
+        }
+
+        void add(long price, long timestamp) {
+            long seq = ticks++;
+            if (seq == 0) {
+                base = price;
+                ema = price;
+            } else {
+                ema += alpha * (price - ema);
+            }
+            long d = price - base;
+            if (seq >= window) {
+                long evicted = prices[(int) (seq - window) & mask] - base;
+                sum -= evicted;
+                sumSquares -= evicted * evicted;
+            }
+            prices[(int) seq & mask] = price;
+            sum += d;
+            sumSquares += d * d;
+            last = price;
+
+            // expire before pushing so a deque never holds more than window entries
+            long expired = seq - window;
+            if (minTail > minHead && minQueue[(int) minHead & mask] <= expired) {
+                minHead++;
+            }
+            while (minTail > minHead && prices[(int) minQueue[(int) (minTail - 1) & mask] & mask] >= price) {
+                minTail--;
+            }
+            minQueue[(int) minTail++ & mask] = seq;
+            if (maxTail > maxHead && maxQueue[(int) maxHead & mask] <= expired) {
+                maxHead++;
+            }
+            while (maxTail > maxHead && prices[(int) maxQueue[(int) (maxTail - 1) & mask] & mask] <= price) {
+                maxTail--;
+            }
+            maxQueue[(int) maxTail++ & mask] = seq;
+
+            // late ticks fold into the open bar rather than reopening a closed one
+            if (barStart == Long.MIN_VALUE || timestamp >= barStart + barNanos) {
+                if (barStart != Long.MIN_VALUE) {
+                    int at = (int) (barsClosed++ % barHistory);
+                    barStarts[at] = barStart;
+                    opens[at] = open;
+                    highs[at] = high;
+                    lows[at] = low;
+                    closes[at] = close;
+                    counts[at] = barTicks;
+                }
+                barStart = Math.floorDiv(timestamp, barNanos) * barNanos;
+                open = high = low = price;
+                barTicks = 0;
+            }
+            high = Math.max(high, price);
+            low = Math.min(low, price);
+            close = price;
+            barTicks++;
+        }
+
+        Snapshot snapshot() {
+            while (true) {
+                long before = (long) VERSION.getAcquire(this);
+                if ((before & 1) == 0) {
+                    long n = Math.min(ticks, window);
+                    long s = sum, sq = sumSquares, b = base, lastPrice = last;
+                    double e = ema;
+                    long min = prices[(int) minQueue[(int) minHead & mask] & mask];
+                    long max = prices[(int) maxQueue[(int) maxHead & mask] & mask];
+                    long t = ticks, bs = barStart, o = open, h = high, l = low, c = close, bt = barTicks;
+                    VarHandle.loadLoadFence();
+                    if ((long) VERSION.getOpaque(this) != before) {
+                        continue;
+                    }
+                    if (n == 0) {
+                        return null;
+                    }
+                    double mean = (double) s / n;
+                    double variance = Math.max(0.0, (double) sq / n - mean * mean);
+                    return new Snapshot(symbol, scale, t, lastPrice, b + mean, e, min, max, variance,
+                            new Bar(scale, bs, o, h, l, c, bt));
+                }
+                Thread.onSpinWait();
+            }
+        }
+
+        Bar[] completedBars() {
+            while (true) {
+                long before = (long) VERSION.getAcquire(this);
+                if ((before & 1) == 0) {
+                    long closed = barsClosed;
+                    int n = (int) Math.min(closed, barHistory);
+                    Bar[] bars = new Bar[n];
+                    for (int i = 0; i < n; i++) {
+                        int at = (int) ((closed - n + i) % barHistory);
+                        bars[i] = new Bar(scale, barStarts[at], opens[at], highs[at], lows[at], closes[at], counts[at]);
+                    }
+                    VarHandle.loadLoadFence();
+                    if ((long) VERSION.getOpaque(this) == before) {
+                        return bars;
+                    }
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Statistics over the last {@code window} ticks of one symbol. Prices are
+     * in currency units; variance is in currency units squared.
+     */
+    public static final class Snapshot {
+        public final String symbol;
+        public final long ticks;
+        public final double last;
+        public final double sma;
+        public final double ema;
+        public final double min;
+        public final double max;
+        public final double variance;
+        public final Bar currentBar;
+
+        Snapshot(String symbol, PriceScale scale, long ticks, long last, double smaScaled, double emaScaled,
+                 long min, long max, double varianceScaled, Bar currentBar) {
+            double unit = scale.toDouble(1);
+            this.symbol = symbol;
+            this.ticks = ticks;
+            this.last = scale.toDouble(last);
+            this.sma = smaScaled * unit;
+            this.ema = emaScaled * unit;
+            this.min = scale.toDouble(min);
+            this.max = scale.toDouble(max);
+            this.variance = varianceScaled * unit * unit;
+            this.currentBar = currentBar;
+        }
+
+        public double stdDev() {
+            return Math.sqrt(variance);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s ticks=%d last=%.2f sma=%.4f ema=%.4f min=%.2f max=%.2f stddev=%.4f bar=%s",
+                    symbol, ticks, last, sma, ema, min, max, stdDev(), currentBar);
+        }
+    }
+
+    /**
+     * One OHLC bar; {@code startNanos} is the epoch-nanosecond start of its interval.
+     */
+    public static final class Bar {
+        public final long startNanos;
+        public final double open;
+        public final double high;
+        public final double low;
+        public final double close;
+        public final long ticks;
+
+        Bar(PriceScale scale, long startNanos, long open, long high, long low, long close, long ticks) {
+            this.startNanos = startNanos;
+            this.open = scale.toDouble(open);
+            this.high = scale.toDouble(high);
+            this.low = scale.toDouble(low);
+            this.close = scale.toDouble(close);
+            this.ticks = ticks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("O %.2f H %.2f L %.2f C %.2f (%d ticks)", open, high, low, close, ticks);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Benchmark harness for the Stock fan-out path, modelled on JMH: warmup and
+ * measurement iterations per trial, a fresh Stock and dispatcher per trial,
+ * and results written in JMH's JSON layout so the usual tooling can plot them.
+ *
+ * For each (dispatcher, observer count, publisher threads) it reports:
+ *  - publish throughput: updatePrice calls per second, metrics disabled
+ *  - delivery throughput: observer callbacks per second
+ *  - allocation: bytes allocated per updatePrice on the publishing threads
+ *  - end-to-end latency: p50/p99/p99.9 publish-to-callback, from StockMetrics;
+ *    publishers run flat out, so this is latency at saturation (queueing included)
+ *
+ * Usage:
+ *   java StockBenchmark [--dispatchers executor,conflating,ring,runtime,exchange]
+ *       [--observers 1,10,100,1000,10000] [--threads 1,2,4]
+ *       [--warmup 2] [--iterations 5] [--iteration-ms 1000] [--json results.json]
+ *
+ * Runs in one JVM (no forks), so compare runs made with the same settings.
+ */
+public class StockBenchmark {
+    private static final String[] ALL_DISPATCHERS = { "executor", "conflating", "ring", "runtime", "exchange" };
+
+    private String[] dispatchers = ALL_DISPATCHERS;
+    private int[] observerCounts = { 1, 10, 100, 1_000, 10_000 };
+    private int[] threadCounts = { 1, 2, 4 };
+    private int warmupIterations = 2;
+    private int measureIterations = 5;
+    private long iterationMillis = 1_000;
+    private Path jsonOut;
+
+    public static void main(String[] args) throws Exception {
+        StockBenchmark bench = new StockBenchmark();
+        bench.parse(args);
+        bench.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--dispatchers":
+                    dispatchers = value.split(",");
+                    break;
+                case "--observers":
+                    observerCounts = ints(value);
+                    break;
+                case "--threads":
+                    threadCounts = ints(value);
+                    break;
+                case "--warmup":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    measureIterations = Integer.parseInt(value);
+                    break;
+                case "--iteration-ms":
+                    iterationMillis = Long.parseLong(value);
+                    break;
+                case "--json":
+                    jsonOut = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+            i++;
+        }
+    }
+
+    private static int[] ints(String csv) {
+        return Arrays.stream(csv.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private void run() throws Exception {
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-11s %9s %7s %14s %16s %12s %10s %10s %10s%n", "dispatcher", "observers", "threads",
+                "publish/s", "deliveries/s", "B/publish", "p50(us)", "p99(us)", "p99.9(us)");
+        for (String dispatcher : dispatchers) {
+            for (int observers : observerCounts) {
+                for (int threads : threadCounts) {
+                    if (dispatcher.equals("ring") && threads > 1) {
+                        // single-writer by design
+                        continue;
+                    }
+                    Result r = trial(dispatcher, observers, threads);
+                    results.add(r);
+                    System.out.printf(Locale.ROOT, "%-11s %9d %7d %14.0f %16.0f %12.1f %10.1f %10.1f %10.1f%n",
+                            dispatcher, observers, threads, r.publishPerSecond, r.deliveriesPerSecond,
+                            r.bytesPerPublish, r.p50Nanos / 1e3, r.p99Nanos / 1e3, r.p999Nanos / 1e3);
+                }
+            }
+        }
+        if (jsonOut != null) {
+            Files.write(jsonOut, toJson(results).getBytes(StandardCharsets.UTF_8));
+            System.out.println("results written to " + jsonOut);
+        }
+    }
+
+    private Result trial(String dispatcher, int observers, int threads) throws Exception {
+        Fixture f = new Fixture(dispatcher, observers);
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                f.iteration(threads, iterationMillis);
+            }
+            Result r = new Result(dispatcher, observers, threads);
+            double[] publish = new double[measureIterations];
+            double[] deliveries = new double[measureIterations];
+            double[] bytes = new double[measureIterations];
+            for (int i = 0; i < measureIterations; i++) {
+                Iteration it = f.iteration(threads, iterationMillis);
+                publish[i] = it.publishes / it.publishSeconds;
+                deliveries[i] = it.deliveries / it.totalSeconds;
+                bytes[i] = (double) it.allocatedBytes / Math.max(1, it.publishes);
+            }
+            r.publishPerSecond = mean(publish);
+            r.publishError = stddev(publish);
+            r.deliveriesPerSecond = mean(deliveries);
+            r.bytesPerPublish = mean(bytes);
+            // latency pass: same load with metrics on, kept apart so recording does not skew throughput
+            StockMetrics metrics = f.stock.enableMetrics();
+            for (int i = 0; i < measureIterations; i++) {
+                f.iteration(threads, iterationMillis);
+            }
+            StockMetrics.Snapshot snapshot = metrics.snapshot();
+            f.stock.disableMetrics();
+            for (StockMetrics.ObserverSnapshot o : snapshot.observers) {
+                r.p50Nanos = Math.max(r.p50Nanos, o.p50Nanos);
+                r.p99Nanos = Math.max(r.p99Nanos, o.p99Nanos);
+            }
+            for (PriceObserver o : f.stock.observers()) {
+                StockMetrics.ObserverStats s = metrics.statsFor(o);
+                if (s != null) {
+                    r.p999Nanos = Math.max(r.p999Nanos, s.latencyPercentileNanos(99.9));
+                }
+            }
+            return r;
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * A Stock wired to one dispatcher with counting observers.
+     */
+    private static final class Fixture {
+        final Stock stock;
+        final LongAdder delivered = new LongAdder();
+        private final PriceDispatcher dispatcher;
+        private final NotificationRuntime runtime;
+        private final Exchange exchange;
+
+        Fixture(String name, int observers) {
+            NotificationRuntime rt = null;
+            Exchange ex = null;
+            int cores = Runtime.getRuntime().availableProcessors();
+            switch (name) {
+                case "executor":
+                    // bounded queue with caller-runs so 10k observers cannot exhaust the heap
+                    dispatcher = new ExecutorDispatcher(new ThreadPoolExecutor(cores, cores, 0, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(1 << 16), new ThreadPoolExecutor.CallerRunsPolicy()));
+                    break;
+                case "conflating":
+                    dispatcher = new ConflatingDispatcher(new ThreadPoolExecutor(cores, cores, 0, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(observers + 1)));
+                    break;
+                case "ring":
+                    dispatcher = new RingBufferDispatcher(1 << 16, RingBufferDispatcher.WaitStrategy.yielding());
+                    break;
+                case "runtime":
+                    rt = new NotificationRuntime(64, NotificationRuntime.OverflowPolicy.BLOCK_PUBLISHER);
+                    dispatcher = rt.dispatcher();
+                    break;
+                case "exchange":
+                    ex = new Exchange(1, 1 << 16);
+                    dispatcher = null;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown dispatcher: " + name);
+            }
+            this.runtime = rt;
+            this.exchange = ex;
+            this.stock = ex != null ? ex.list("BENCH") : new Stock("BENCH", dispatcher);
+            for (int i = 0; i < observers; i++) {
+                stock.registerObserver((s, p) -> delivered.increment());
+            }
+        }
+
+        Iteration iteration(int threads, long millis) throws InterruptedException {
+            long deliveredBefore = delivered.sum();
+            Publisher[] publishers = new Publisher[threads];
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(millis);
+            for (int i = 0; i < threads; i++) {
+                publishers[i] = new Publisher(stock, deadline);
+                publishers[i].start();
+            }
+            Iteration it = new Iteration();
+            for (Publisher p : publishers) {
+                p.join();
+                it.publishes += p.ops;
+                it.allocatedBytes += p.allocatedBytes;
+            }
+            it.publishSeconds = (System.nanoTime() - start) / 1e9;
+            awaitQuiet();
+            it.totalSeconds = (System.nanoTime() - start) / 1e9;
+            it.deliveries = delivered.sum() - deliveredBefore;
+            return it;
+        }
+
+        // deliveries trail publishing; wait until they stop moving
+        private void awaitQuiet() throws InterruptedException {
+            long last = -1;
+            long now = delivered.sum();
+            long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (now != last && System.nanoTime() < giveUp) {
+                Thread.sleep(20);
+                last = now;
+                now = delivered.sum();
+            }
+        }
+
+        void close() throws InterruptedException {
+            if (exchange != null) {
+                exchange.shutdown(5, TimeUnit.SECONDS);
+            } else if (runtime != null) {
+                runtime.shutdown(5, TimeUnit.SECONDS);
+            } else {
+                dispatcher.shutdown(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static final class Publisher extends Thread {
+        private final Stock stock;
+        private final long deadline;
+        long ops;
+        long allocatedBytes;
+
+        Publisher(Stock stock, long deadline) {
+            this.stock = stock;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            com.sun.management.ThreadMXBean mx =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long before = mx.getCurrentThreadAllocatedBytes();
+            long n = 0;
+            long price = 10_000;
+            do {
+                // check the clock every 256 calls so timing stays off the measured path
+                for (int i = 0; i < 256; i++) {
+                    stock.updateScaledPrice(price + (n & 0xFF));
+                    n++;
+                }
+            } while (System.nanoTime() < deadline);
+            allocatedBytes = mx.getCurrentThreadAllocatedBytes() - before;
+            ops = n;
+        }
+    }
+
+    private static final class Iteration {
+        long publishes;
+        long deliveries;
+        long allocatedBytes;
+        double publishSeconds;
+        double totalSeconds;
+    }
+
+    private static final class Result {
+        final String dispatcher;
+        final int observers;
+        final int threads;
+        double publishPerSecond;
+        double publishError;
+        double deliveriesPerSecond;
+        double bytesPerPublish;
+        long p50Nanos;
+        long p99Nanos;
+        long p999Nanos;
+
+        Result(String dispatcher, int observers, int threads) {
+            this.dispatcher = dispatcher;
+            this.observers = observers;
+            this.threads = threads;
+        }
+    }
+
+    private static double mean(double[] xs) {
+        double sum = 0;
+        for (double x : xs) {
+            sum += x;
+        }
+        return xs.length == 0 ? 0 : sum / xs.length;
+    }
+
+    private static double stddev(double[] xs) {
+        if (xs.length < 2) {
+            return 0;
+        }
+        double m = mean(xs), sq = 0;
+        for (double x : xs) {
+            sq += (x - m) * (x - m);
+        }
+        return Math.sqrt(sq / (xs.length - 1));
+    }
+
+    // JMH result layout: one entry per trial, primary metric plus secondaries
+    private String toJson(List<Result> results) {
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            sb.append(String.format(Locale.ROOT,
+                    "  {\n"
+                            + "    \"benchmark\": \"StockBenchmark.updatePrice\",\n"
+                            + "    \"mode\": \"thrpt\",\n"
+                            + "    \"threads\": %d,\n"
+                            + "    \"warmupIterations\": %d,\n"
+                            + "    \"measurementIterations\": %d,\n"
+                            + "    \"measurementTime\": \"%d ms\",\n"
+                            + "    \"params\": { \"dispatcher\": \"%s\", \"observers\": \"%d\" },\n"
+                            + "    \"primaryMetric\": { \"score\": %.3f, \"scoreError\": %.3f, \"scoreUnit\": \"ops/s\" },\n"
+                            + "    \"secondaryMetrics\": {\n"
+                            + "      \"deliveries\": { \"score\": %.3f, \"scoreUnit\": \"ops/s\" },\n"
+                            + "      \"gc.alloc.rate.norm\": { \"score\": %.3f, \"scoreUnit\": \"B/op\" },\n"
+                            + "      \"latency.p0.50\": { \"score\": %.3f, \"scoreUnit\": \"us\" },\n"
+                            + "      \"latency.p0.99\": { \"score\": %.3f, \"scoreUnit\": \"us\" },\n"
+                            + "      \"latency.p0.999\": { \"score\": %.3f, \"scoreUnit\": \"us\" }\n"
+                            + "    }\n"
+                            + "  }%s\n",
+                    r.threads, warmupIterations, measureIterations, iterationMillis, r.dispatcher, r.observers,
+                    r.publishPerSecond, r.publishError, r.deliveriesPerSecond, r.bytesPerPublish,
+                    r.p50Nanos / 1e3, r.p99Nanos / 1e3, r.p999Nanos / 1e3,
+                    i + 1 < results.size() ? "," : ""));
+        }
+        return sb.append("]\n").toString();
+    }
+}
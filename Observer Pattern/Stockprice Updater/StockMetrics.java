@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fan-out instrumentation for one Stock: per-observer publish-to-callback
+ * latency, in-flight deliveries, failures and throughput.
+ *
+ * Enabled with {@link Stock#enableMetrics()}. While disabled, Stock skips the
+ * clock read and every recording call, so the only cost is a null check.
+ */
+public class StockMetrics {
+    private final String symbol;
+    private final long startNanos = System.nanoTime();
+    private final ConcurrentHashMap<Object, ObserverStats> stats = new ConcurrentHashMap<>();
+
+    StockMetrics(String symbol) {
+        this.symbol = symbol;
+    }
+
+    void enqueued(Object observer) {
+        stats(observer).inFlight.incrementAndGet();
+    }
+
+    void dropped(Object observer) {
+        stats(observer).inFlight.decrementAndGet();
+    }
+
+    /**
+     * Record a completed callback covering {@code ticks} ticks, the oldest of
+     * which was published at {@code publishNanos}.
+     */
+    void completed(Object observer, long publishNanos, int ticks, boolean failed) {
+        ObserverStats s = stats(observer);
+        s.inFlight.decrementAndGet();
+        s.latency.record(System.nanoTime() - publishNanos);
+        if (failed) {
+            s.failed.increment();
+        } else {
+            s.delivered.add(ticks);
+        }
+    }
+
+    /**
+     * Live counters for one observer (a PriceObserver or a BatchPriceObserver),
+     * or null if it has not been notified yet.
+     */
+    public ObserverStats statsFor(Object observer) {
+        return stats.get(observer);
+    }
+
+    private ObserverStats stats(Object observer) {
+        ObserverStats s = stats.get(observer);
+        return s != null ? s : stats.computeIfAbsent(observer, o -> new ObserverStats(String.valueOf(o)));
+    }
+
+    /**
+     * Point-in-time copy of every observer's counters, slowest p99 first.
+     */
+    public Snapshot snapshot() {
+        double elapsedSeconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        List<ObserverSnapshot> rows = new ArrayList<>();
+        for (ObserverStats s : stats.values()) {
+            rows.add(s.snapshot(elapsedSeconds));
+        }
+        rows.sort((a, b) -> Long.compare(b.p99Nanos, a.p99Nanos));
+        return new Snapshot(symbol, elapsedSeconds, Collections.unmodifiableList(rows));
+    }
+
+    /**
+     * Counters for a single observer.
+     */
+    public static final class ObserverStats {
+        private final String name;
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        ObserverStats(String name) {
+            this.name = name;
+        }
+
+        public long delivered() {
+            return delivered.sum();
+        }
+
+        public long failed() {
+            return failed.sum();
+        }
+
+        public long inFlight() {
+            return inFlight.get();
+        }
+
+        public long latencyPercentileNanos(double percentile) {
+            return latency.percentile(percentile);
+        }
+
+        ObserverSnapshot snapshot(double elapsedSeconds) {
+            long d = delivered.sum();
+            return new ObserverSnapshot(name, d, failed.sum(), inFlight.get(), d / elapsedSeconds,
+                    latency.percentile(50), latency.percentile(99), latency.max());
+        }
+    }
+
+    /**
+     * Immutable view of one observer's counters.
+     */
+    public static final class ObserverSnapshot {
+        public final String observer;
+        public final long delivered;
+        public final long failed;
+        public final long inFlight;
+        public final double ticksPerSecond;
+        public final long p50Nanos;
+        public final long p99Nanos;
+        public final long maxNanos;
+
+        ObserverSnapshot(String observer, long delivered, long failed, long inFlight,
+                double ticksPerSecond, long p50Nanos, long p99Nanos, long maxNanos) {
+            this.observer = observer;
+            this.delivered = delivered;
+            this.failed = failed;
+            this.inFlight = inFlight;
+            this.ticksPerSecond = ticksPerSecond;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+    }
+
+    /**
+     * Immutable view of all observers of a stock; {@code toString} is a table
+     * suitable for logs.
+     */
+    public static final class Snapshot {
+        public final String symbol;
+        public final double elapsedSeconds;
+        public final List<ObserverSnapshot> observers;
+
+        Snapshot(String symbol, double elapsedSeconds, List<ObserverSnapshot> observers) {
+            this.symbol = symbol;
+            this.elapsedSeconds = elapsedSeconds;
+            this.observers = observers;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%s fan-out over %.1fs%n", symbol, elapsedSeconds));
+            sb.append(String.format("  %-20s %10s %7s %9s %10s %10s %10s %10s%n",
+                    "observer", "delivered", "failed", "inflight", "ticks/s", "p50(us)", "p99(us)", "max(us)"));
+            for (ObserverSnapshot o : observers) {
+                sb.append(String.format("  %-20s %10d %7d %9d %10.0f %10.1f %10.1f %10.1f%n",
+                        o.observer, o.delivered, o.failed, o.inFlight, o.ticksPerSecond,
+                        o.p50Nanos / 1e3, o.p99Nanos / 1e3, o.maxNanos / 1e3));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Lock-free log-linear histogram: each power of two is split into 8
+     * sub-buckets, so percentiles are within 12.5% of the true value.
+     */
+    static final class LatencyHistogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long v = Math.max(1, nanos);
+            counts.incrementAndGet(index(v));
+            long m;
+            while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+                // retry
+            }
+        }
+
+        private static int index(long v) {
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            if (exp < SUB_BITS) {
+                return (int) v;
+            }
+            int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        // upper bound of the values counted in a bucket
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+            int sub = index % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+        }
+
+        long percentile(double percentile) {
+            long total = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                total += counts.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        long max() {
+            return max.get();
+        }
+    }
+}
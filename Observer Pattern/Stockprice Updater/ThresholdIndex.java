@@ -0,0 +1,360 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Threshold subscriptions for one Stock, indexed so a tick only touches the
+ * subscriptions it actually triggers.
+ *
+ * Every condition reduces to one or two crossing levels. Upward levels live in
+ * one sorted array and downward levels in another; a tick from {@code prev} to
+ * {@code cur} binary-searches the interval between them and walks only the
+ * levels inside it, so a tick costs O(log n + matches) however many alerts
+ * are registered.
+ *
+ * New levels go to an unsorted buffer of at most 64 that ticks scan directly.
+ * A full buffer is sorted into a second, younger pair of arrays, which ticks
+ * search the same way as the main pair. The young arrays are merged into the
+ * main ones once they outgrow a multiple of the square root of the index.
+ * That keeps each main merge rare enough that bulk registration of n alerts
+ * costs O(n sqrt n) element moves. Cancelled levels are skipped and compacted
+ * away once they make up a fraction of the index.
+ */
+public class ThresholdIndex {
+    private static final Comparator<Level> BY_PRICE = Comparator.comparingLong(l -> l.price);
+    // no previous tick / bound unused; never a real price
+    private static final long NONE = Long.MIN_VALUE;
+    // unsorted levels a tick scans one by one
+    private static final int PENDING_LIMIT = 64;
+
+    private final Stock stock;
+    // fires when prev < level <= cur
+    private final Side up = new Side();
+    // fires when cur <= level < prev
+    private final Side down = new Side();
+    // recent additions, sorted but not yet in the main arrays
+    private final Side youngUp = new Side();
+    private final Side youngDown = new Side();
+    private final List<Level> pendingAdds = new ArrayList<>();
+    private final List<Subscription> unarmed = new ArrayList<>();
+    private final List<Level> fired = new ArrayList<>();
+    private int pendingCancels;
+    private long last;
+
+    ThresholdIndex(Stock stock) {
+        this.stock = stock;
+        // the price subscriptions are made against, so the first tick after them can cross a level;
+        // a stock that has never traded (price 0) has nothing to cross from
+        long current = stock.getScaledPrice();
+        this.last = current != 0 ? current : NONE;
+    }
+
+    synchronized Subscription subscribe(PriceCondition condition, PriceObserver observer) {
+        Subscription sub = new Subscription(condition, observer);
+        long reference = last == NONE ? stock.getScaledPrice() : last;
+        if (condition.kind == PriceCondition.Kind.MOVES_BY_PERCENT && !(reference > 0)) {
+            // nothing to measure the move from until the first tick
+            unarmed.add(sub);
+        } else {
+            arm(sub, reference);
+        }
+        return sub;
+    }
+
+    private void arm(Subscription sub, long reference) {
+        PriceCondition c = sub.condition;
+        PriceScale scale = stock.getScale();
+        // levels in scaled units: a price reaches "above x" at the first unit at or over x
+        long low = scale.levelFromDouble(c.low, true);
+        long high = scale.levelFromDouble(c.high, false);
+        switch (c.kind) {
+            case ABOVE:
+                sub.levels = new Level[] { new Level(sub, low, true, NONE, NONE) };
+                break;
+            case BELOW:
+                sub.levels = new Level[] { new Level(sub, high, false, NONE, NONE) };
+                break;
+            case ENTERS_RANGE:
+                // rising into the range across low, or falling into it across high;
+                // the tick must land inside, not jump over the range
+                sub.levels = new Level[] {
+                        new Level(sub, low, true, NONE, high),
+                        new Level(sub, high, false, NONE, low) };
+                break;
+            case EXITS_RANGE:
+                // cur > high is the same as crossing up through high + 1;
+                // the previous tick must have been inside
+                sub.levels = new Level[] {
+                        new Level(sub, high + 1, true, low, NONE),
+                        new Level(sub, low - 1, false, high, NONE) };
+                break;
+            case MOVES_BY_PERCENT:
+                long move = Math.max(1, Math.round(reference * c.low / 100.0));
+                sub.levels = new Level[] {
+                        new Level(sub, reference + move, true, NONE, NONE),
+                        new Level(sub, reference - move, false, NONE, NONE) };
+                break;
+        }
+        for (Level level : sub.levels) {
+            pendingAdds.add(level);
+        }
+        if (pendingAdds.size() > PENDING_LIMIT) {
+            flushPending();
+        }
+    }
+
+    private synchronized void cancel(Subscription sub) {
+        if (sub.cancelled) {
+            return;
+        }
+        sub.cancelled = true;
+        unarmed.remove(sub);
+        if (sub.levels != null) {
+            retire(sub.levels);
+        }
+    }
+
+    /**
+     * Evaluate a tick; called from Stock.updatePrice.
+     */
+    synchronized void onTick(long price) {
+        int indexed = up.size + down.size + youngUp.size + youngDown.size;
+        if (pendingCancels > 64 + (indexed >>> 2)) {
+            compact();
+        }
+        long prev = last;
+        last = price;
+        if (!unarmed.isEmpty()) {
+            for (Subscription sub : unarmed) {
+                arm(sub, price);
+            }
+            unarmed.clear();
+        }
+        if (prev == NONE || price == prev) {
+            return;
+        }
+        collectCrossed(up, down, prev, price);
+        collectCrossed(youngUp, youngDown, prev, price);
+        // not yet sorted: few enough to test one by one
+        for (int i = 0, n = pendingAdds.size(); i < n; i++) {
+            Level level = pendingAdds.get(i);
+            boolean crossed = level.upward
+                    ? prev < level.price && level.price <= price
+                    : price <= level.price && level.price < prev;
+            if (crossed) {
+                collect(level, prev, price);
+            }
+        }
+        if (fired.isEmpty()) {
+            return;
+        }
+        for (Level level : fired) {
+            Subscription sub = level.subscription;
+            stock.notifyOne(sub.observer, price);
+            if (sub.condition.kind == PriceCondition.Kind.MOVES_BY_PERCENT) {
+                // re-arm around the triggering price
+                retire(sub.levels);
+                arm(sub, price);
+            }
+        }
+        fired.clear();
+    }
+
+    // unmerged levels are dropped from the buffer right away; indexed ones on the next merge
+    private void retire(Level[] levels) {
+        for (Level level : levels) {
+            level.retired = true;
+            int at = pendingAdds.lastIndexOf(level);
+            if (at >= 0) {
+                pendingAdds.remove(at);
+            } else {
+                pendingCancels++;
+            }
+        }
+    }
+
+    private void collectCrossed(Side up, Side down, long prev, long price) {
+        if (price > prev) {
+            // levels in (prev, price]
+            for (int i = up.firstAbove(prev); i < up.size && up.prices[i] <= price; i++) {
+                collect(up.levels[i], prev, price);
+            }
+        } else {
+            // levels in [price, prev)
+            for (int i = down.firstAtOrAbove(price); i < down.size && down.prices[i] < prev; i++) {
+                collect(down.levels[i], prev, price);
+            }
+        }
+    }
+
+    private void collect(Level level, long prev, long price) {
+        if (level.retired || level.subscription.cancelled) {
+            return;
+        }
+        if (level.prevBound != NONE && (level.upward ? prev < level.prevBound : prev > level.prevBound)) {
+            return;
+        }
+        if (level.curBound != NONE && (level.upward ? price > level.curBound : price < level.curBound)) {
+            return;
+        }
+        fired.add(level);
+    }
+
+    // sort the buffer into the young arrays, and those into the main ones once they are big enough
+    private void flushPending() {
+        List<Level> ups = new ArrayList<>();
+        List<Level> downs = new ArrayList<>();
+        for (Level level : pendingAdds) {
+            if (!level.subscription.cancelled) {
+                (level.upward ? ups : downs).add(level);
+            }
+        }
+        pendingAdds.clear();
+        youngUp.merge(ups);
+        youngDown.merge(downs);
+        int main = up.size + down.size;
+        if (youngUp.size + youngDown.size > PENDING_LIMIT + 8 * (int) Math.sqrt(main)) {
+            mergeYoung();
+        }
+    }
+
+    private void mergeYoung() {
+        up.merge(youngUp.drain());
+        down.merge(youngDown.drain());
+    }
+
+    // fold everything into the main arrays, dropping cancelled levels
+    private void compact() {
+        flushPending();
+        mergeYoung();
+        pendingCancels = 0;
+    }
+
+    /**
+     * Number of armed crossing levels (each condition uses one or two).
+     */
+    public synchronized int size() {
+        return up.size + down.size + youngUp.size + youngDown.size + pendingAdds.size();
+    }
+
+    /**
+     * Sorted levels in one direction, with prices unpacked into a primitive
+     * array so the binary search never dereferences a Level.
+     */
+    private static final class Side {
+        long[] prices = new long[0];
+        Level[] levels = new Level[0];
+        int size;
+
+        int firstAbove(long price) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (prices[mid] <= price) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        int firstAtOrAbove(long price) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (prices[mid] < price) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        // the levels, sorted, leaving this side empty
+        List<Level> drain() {
+            List<Level> all = Arrays.asList(Arrays.copyOf(levels, size));
+            prices = new long[0];
+            levels = new Level[0];
+            size = 0;
+            return all;
+        }
+
+        // drop cancelled/retired levels and merge the sorted additions in one pass
+        void merge(List<Level> additions) {
+            Level[] added = additions.toArray(new Level[0]);
+            Arrays.sort(added, BY_PRICE);
+            int capacity = size + added.length;
+            long[] newPrices = new long[capacity];
+            Level[] newLevels = new Level[capacity];
+            int n = 0, i = 0, j = 0;
+            while (i < size || j < added.length) {
+                Level next;
+                if (j == added.length || (i < size && prices[i] <= added[j].price)) {
+                    next = levels[i++];
+                } else {
+                    next = added[j++];
+                }
+                if (next.retired || next.subscription.cancelled) {
+                    continue;
+                }
+                newPrices[n] = next.price;
+                newLevels[n] = next;
+                n++;
+            }
+            prices = newPrices;
+            levels = newLevels;
+            size = n;
+        }
+    }
+
+    private static final class Level {
+        final Subscription subscription;
+        final long price;
+        final boolean upward;
+        // range conditions: the edge the previous / current price must not be beyond; NONE when unused
+        final long prevBound;
+        final long curBound;
+        boolean retired;
+
+        Level(Subscription subscription, long price, boolean upward, long prevBound, long curBound) {
+            this.subscription = subscription;
+            this.price = price;
+            this.upward = upward;
+            this.prevBound = prevBound;
+            this.curBound = curBound;
+        }
+    }
+
+    /**
+     * Handle for one threshold subscription.
+     */
+    public final class Subscription {
+        private final PriceCondition condition;
+        private final PriceObserver observer;
+        private Level[] levels;
+        private volatile boolean cancelled;
+
+        private Subscription(PriceCondition condition, PriceObserver observer) {
+            this.condition = condition;
+            this.observer = observer;
+        }
+
+        public PriceCondition condition() {
+            return condition;
+        }
+
+        /**
+         * Stop receiving notifications for this condition.
+         */
+        public void cancel() {
+            ThresholdIndex.this.cancel(this);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates one stock's ticks into primitive arrays for a
+ * {@link BatchPriceObserver} and hands them over when the batch is full or its
+ * oldest tick has waited {@code maxDelay}.
+ *
+ * Two buffers are preallocated: one fills on the publisher's thread while the
+ * other is being delivered. Because at most one batch is in flight, batches
+ * arrive in order and are never delivered concurrently. If the observer is
+ * still busy when the next batch fills, the publisher waits — that is the
+ * backpressure a slow batch consumer exerts.
+ */
+public class TickBatcher {
+    // shared by all batchers: time-window flushes and batch delivery
+    private static final ScheduledExecutorService DELIVERY = newDeliveryPool();
+
+    private final Stock stock;
+    private final BatchPriceObserver observer;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final ScheduledFuture<?> windowTimer;
+
+    private Buffer filling;
+    private Buffer spare;
+    private boolean closed;
+
+    TickBatcher(Stock stock, BatchPriceObserver observer, int maxBatch, long maxDelay, TimeUnit unit) {
+        if (maxBatch <= 0)
+            throw new IllegalArgumentException("maxBatch must be positive");
+        if (maxDelay <= 0)
+            throw new IllegalArgumentException("maxDelay must be positive");
+        this.stock = stock;
+        this.observer = observer;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.filling = new Buffer(maxBatch);
+        this.spare = new Buffer(maxBatch);
+        // flushes partially filled batches when the feed goes quiet
+        this.windowTimer = DELIVERY.scheduleAtFixedRate(this::flushIfExpired,
+                maxDelayNanos, maxDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    BatchPriceObserver observer() {
+        return observer;
+    }
+
+    /**
+     * Append a tick; delivers the batch if it is now full or too old.
+     */
+    synchronized void add(long price, long timestamp) {
+        if (closed) {
+            return;
+        }
+        Buffer b = filling;
+        if (b.count == 0) {
+            b.firstNanos = System.nanoTime();
+            b.stamp = stock.publishStamp();
+        }
+        b.prices[b.count] = price;
+        b.timestamps[b.count] = timestamp;
+        b.count++;
+        if (b.count == maxBatch || System.nanoTime() - b.firstNanos >= maxDelayNanos) {
+            handOff();
+        }
+    }
+
+    // runs on a delivery thread, so it must never wait for a spare buffer: the
+    // batch in flight is recycled by a task queued on this same pool
+    private synchronized void flushIfExpired() {
+        if (spare != null && expired()) {
+            handOff();
+        }
+    }
+
+    private boolean expired() {
+        return filling.count > 0 && System.nanoTime() - filling.firstNanos >= maxDelayNanos;
+    }
+
+    // caller holds the lock; waits until the previous batch has been delivered,
+    // which only a publisher or close() may do
+    private void handOff() {
+        boolean interrupted = false;
+        while (spare == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        Buffer full = filling;
+        filling = spare;
+        spare = null;
+        stock.recordEnqueued(observer, full.stamp);
+        DELIVERY.execute(full);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void recycle(Buffer delivered) {
+        delivered.count = 0;
+        spare = delivered;
+        notifyAll();
+        // a timer flush skipped while this batch was in flight
+        if (!closed && expired()) {
+            handOff();
+        }
+    }
+
+    /**
+     * Deliver whatever is buffered, wait for it to be delivered and stop.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        windowTimer.cancel(false);
+        if (filling.count > 0) {
+            handOff();
+        }
+        boolean interrupted = false;
+        while (spare == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        closed = true;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ScheduledExecutorService newDeliveryPool() {
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(
+                Runtime.getRuntime().availableProcessors(), r -> {
+                    Thread t = new Thread(r, "tick-batcher");
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.setRemoveOnCancelPolicy(true);
+        return pool;
+    }
+
+    /**
+     * Preallocated batch arrays; a buffer is its own delivery task.
+     */
+    private final class Buffer implements Runnable {
+        final long[] prices;
+        final long[] timestamps;
+        int count;
+        long firstNanos;
+        // publish stamp of the first tick, for latency metrics
+        long stamp;
+
+        Buffer(int capacity) {
+            prices = new long[capacity];
+            timestamps = new long[capacity];
+        }
+
+        @Override
+        public void run() {
+            try {
+                stock.deliverBatch(observer, prices, timestamps, count, stamp);
+            } finally {
+                recycle(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only tick journal in rolling memory-mapped segment files.
+ *
+ * Each tick is a fixed-width 32-byte record: symbol (up to 8 ASCII chars packed
+ * into a long), journal sequence, timestamp (epoch nanos) and price (fixed-point,
+ * in the stock's {@link PriceScale} units; replay assumes the same scale). Records
+ * are written straight into the mapped segment, so appending allocates nothing
+ * and the OS page cache does the I/O. Segment files are named after their
+ * first sequence, which lets replay seek to a sequence or time range with a
+ * binary search instead of a scan.
+ *
+ * Each segment starts with a 32-byte header holding a magic number, the
+ * format version and the segment's record capacity. Reopening a directory
+ * with a different {@code recordsPerSegment} therefore still reads existing
+ * segments at their own size; only new segments use the new one.
+ *
+ * Old segments are deleted by {@link #truncateBefore(long)}, or automatically
+ * once more than {@code maxSegments} exist. Their mappings are dropped with
+ * them and released when collected.
+ */
+public class TickJournal implements AutoCloseable {
+    static final int RECORD_SIZE = 32;
+    static final int HEADER_SIZE = 32;
+    private static final int MAGIC = 0x4C4E4A54; // "TJNL" read little-endian
+    private static final int VERSION = 1;
+    private static final int SYMBOL_OFFSET = 0;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int TIMESTAMP_OFFSET = 16;
+    private static final int PRICE_OFFSET = 24;
+    private static final String SUFFIX = ".ticks";
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    // 0 keeps every segment
+    private final int maxSegments;
+    // sealed segments, oldest first; the active one is last
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private long nextSequence;
+
+    /**
+     * Open (or recover) a journal in the given directory.
+     *
+     * @param recordsPerSegment records per segment file before rolling
+     */
+    public TickJournal(Path directory, int recordsPerSegment) throws IOException {
+        this(directory, recordsPerSegment, 0);
+    }
+
+    /**
+     * @param recordsPerSegment records per segment file before rolling
+     * @param maxSegments       segments kept; the oldest are deleted when a roll
+     *                          exceeds it. 0 keeps everything
+     */
+    public TickJournal(Path directory, int recordsPerSegment, int maxSegments) throws IOException {
+        if (recordsPerSegment <= 0 || (long) recordsPerSegment * RECORD_SIZE + HEADER_SIZE > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("recordsPerSegment must be positive and fit a 2 GB segment");
+        if (maxSegments < 0)
+            throw new IllegalArgumentException("maxSegments must be >= 0");
+        this.directory = Files.createDirectories(directory);
+        this.recordsPerSegment = recordsPerSegment;
+        this.maxSegments = maxSegments;
+        recover();
+    }
+
+    /**
+     * Pack a symbol into the journal's 8-byte symbol field.
+     */
+    public static long symbolKey(String symbol) {
+        byte[] bytes = symbol.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length == 0 || bytes.length > 8)
+            throw new IllegalArgumentException("journal symbols must be 1-8 ASCII chars: " + symbol);
+        long key = 0;
+        for (byte b : bytes) {
+            key = (key << 8) | (b & 0xFF);
+        }
+        return key;
+    }
+
+    /**
+     * Inverse of {@link #symbolKey(String)}.
+     *
+     * @throws IllegalArgumentException if the key does not hold 1-8 ASCII chars
+     */
+    public static String symbolName(long symbolKey) {
+        int length = 8 - Long.numberOfLeadingZeros(symbolKey) / 8;
+        if (length == 0)
+            throw new IllegalArgumentException("empty symbol key");
+        byte[] bytes = new byte[length];
+        for (int i = length - 1; i >= 0; i--, symbolKey >>>= 8) {
+            bytes[i] = (byte) symbolKey;
+            if (bytes[i] <= 0)
+                throw new IllegalArgumentException("symbol key is not ASCII");
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Append one tick and return its journal sequence.
+     */
+    public synchronized long append(long symbolKey, long scaledPrice) {
+        if (active == null)
+            throw new IllegalStateException("journal is closed");
+        if (active.count == active.capacity) {
+            roll();
+        }
+        long sequence = nextSequence++;
+        long timestamp = Stock.epochNanos();
+        int at = offset(active.count);
+        MappedByteBuffer buf = active.buffer;
+        buf.putLong(at + SYMBOL_OFFSET, symbolKey);
+        buf.putLong(at + TIMESTAMP_OFFSET, timestamp);
+        buf.putLong(at + PRICE_OFFSET, scaledPrice);
+        // sequence last: a non-zero sequence marks the record as complete during recovery
+        buf.putLong(at + SEQUENCE_OFFSET, sequence);
+        active.count++;
+        return sequence;
+    }
+
+    /**
+     * Stream the stock's ticks with sequence in [fromSequence, toSequence] to
+     * the observer, oldest first, on the calling thread.
+     *
+     * @return number of ticks delivered
+     */
+    public long replayBySequence(Stock stock, long fromSequence, long toSequence, PriceObserver observer) {
+        return replay(stock, observer, SEQUENCE_OFFSET, fromSequence, toSequence);
+    }
+
+    /**
+     * Stream the stock's ticks with timestamp (epoch nanos) in [fromNanos, toNanos].
+     *
+     * @return number of ticks delivered
+     */
+    public long replayByTime(Stock stock, long fromNanos, long toNanos, PriceObserver observer) {
+        return replay(stock, observer, TIMESTAMP_OFFSET, fromNanos, toNanos);
+    }
+
+    // sequence and timestamp both increase monotonically, so either can be binary searched
+    private long replay(Stock stock, PriceObserver observer, int keyOffset, long from, long to) {
+        long symbol = symbolKey(stock.getSymbol());
+        List<Segment> view = snapshot();
+        long delivered = 0;
+        for (int i = firstSegment(view, keyOffset, from); i < view.size(); i++) {
+            Segment segment = view.get(i);
+            MappedByteBuffer buf = segment.buffer;
+            int count = segment.count;
+            for (int r = lowerBound(buf, count, keyOffset, from); r < count; r++) {
+                int at = offset(r);
+                if (buf.getLong(at + keyOffset) > to) {
+                    return delivered;
+                }
+                if (buf.getLong(at + SYMBOL_OFFSET) == symbol) {
+                    stock.deliver(observer, buf.getLong(at + PRICE_OFFSET));
+                    delivered++;
+                }
+            }
+        }
+        return delivered;
+    }
+
+    private synchronized List<Segment> snapshot() {
+        // copies so replay can run concurrently with appends; counts are read per segment
+        List<Segment> view = new ArrayList<>(segments.size());
+        for (Segment s : segments) {
+            view.add(s.readView());
+        }
+        return view;
+    }
+
+    // last segment whose first key is <= from (earlier segments cannot contain the range)
+    private static int firstSegment(List<Segment> view, int keyOffset, long from) {
+        int first = 0;
+        for (int i = 0; i < view.size(); i++) {
+            Segment s = view.get(i);
+            if (s.count > 0 && s.buffer.getLong(offset(0) + keyOffset) <= from) {
+                first = i;
+            }
+        }
+        return first;
+    }
+
+    private static int lowerBound(MappedByteBuffer buf, int count, int keyOffset, long key) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (buf.getLong(offset(mid) + keyOffset) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int offset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        // zero-padded names sort by first sequence
+        files.sort(null);
+        nextSequence = 1;
+        for (Path file : files) {
+            Segment segment = Segment.open(file);
+            segment.count = 0;
+            while (segment.count < segment.capacity
+                    && segment.buffer.getLong(offset(segment.count) + SEQUENCE_OFFSET) != 0) {
+                segment.count++;
+            }
+            if (segment.count > 0) {
+                long last = segment.buffer.getLong(offset(segment.count - 1) + SEQUENCE_OFFSET);
+                nextSequence = last + 1;
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            roll();
+        } else {
+            active = segments.get(segments.size() - 1);
+        }
+    }
+
+    private void roll() {
+        try {
+            if (active != null) {
+                active.buffer.force();
+            }
+            Path file = directory.resolve(String.format("%020d%s", nextSequence, SUFFIX));
+            active = Segment.create(file, recordsPerSegment);
+            segments.add(active);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to roll tick journal segment", e);
+        }
+        if (maxSegments > 0 && segments.size() > maxSegments) {
+            deleteOldest(segments.size() - maxSegments);
+        }
+    }
+
+    /**
+     * Delete every sealed segment whose ticks all have a sequence below
+     * {@code sequence}. The active segment is never deleted, so some older
+     * ticks may remain.
+     *
+     * @return number of segments deleted
+     */
+    public synchronized int truncateBefore(long sequence) {
+        int n = 0;
+        // segment i holds sequences below the first sequence of segment i + 1
+        while (n + 1 < segments.size() && segments.get(n + 1).firstSequence() <= sequence) {
+            n++;
+        }
+        deleteOldest(n);
+        return n;
+    }
+
+    private void deleteOldest(int n) {
+        for (int i = 0; i < n; i++) {
+            Segment oldest = segments.remove(0);
+            try {
+                Files.deleteIfExists(oldest.file);
+            } catch (IOException e) {
+                System.err.printf("Failed to delete tick journal segment %s: %s%n", oldest.file, e);
+            }
+        }
+    }
+
+    /**
+     * Flush dirty pages of the active segment to disk.
+     */
+    public synchronized void flush() {
+        if (active != null) {
+            active.buffer.force();
+        }
+    }
+
+    /**
+     * Flush and stop accepting appends. Mappings are released when collected.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        active = null;
+        segments.clear();
+    }
+
+    /**
+     * One mapped segment file, its capacity from the header and the number of
+     * complete records in it.
+     */
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        volatile int count;
+
+        private Segment(Path file, MappedByteBuffer buffer, int capacity, int count) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.count = count;
+        }
+
+        static Segment create(Path file, int records) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_SIZE + (long) records * RECORD_SIZE);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, records);
+                return new Segment(file, buffer, records, 0);
+            }
+        }
+
+        // the capacity comes from the header, not from the journal's current setting
+        static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                if (size < HEADER_SIZE)
+                    throw new IOException("not a tick journal segment: " + file);
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                    throw new IOException("not a version " + VERSION + " tick journal segment: " + file);
+                int records = header.getInt(8);
+                if (records <= 0 || size < HEADER_SIZE + (long) records * RECORD_SIZE)
+                    throw new IOException("tick journal segment " + file + " is shorter than its header says");
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_SIZE + (long) records * RECORD_SIZE);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                return new Segment(file, buffer, records, 0);
+            }
+        }
+
+        // from the file name, so it is known before the first record is written
+        long firstSequence() {
+            String name = file.getFileName().toString();
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        }
+
+        // duplicate shares the mapping but not the position, and freezes the record count
+        Segment readView() {
+            MappedByteBuffer dup = (MappedByteBuffer) buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(file, dup, capacity, count);
+        }
+    }
+}
@@ -0,0 +1,472 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable append-only message log for one topic, in rolling memory-mapped
+ * segment files, with committed offsets per named consumer.
+ *
+ * Each message gets a logical offset (0, 1, 2, ...) and is stored as a record:
+ * payload length plus one (4 bytes), CRC32C of timestamp and payload (4),
+ * timestamp in epoch millis (8), then the payload, padded to 8 bytes. The
+ * length is stored plus one so that a zero field can mark the end of a
+ * segment's data while empty messages stay valid; recovery stops at the first
+ * record whose CRC does not match, so a torn write at a crash is discarded
+ * rather than replayed.
+ * Segment files are named after their first offset. The segment size is
+ * recorded in the directory when the log is created, and a log reopened
+ * with a different size is refused rather than misread.
+ *
+ * Appends only copy into the mapping and return. A flusher thread forces
+ * dirty pages every {@code flushIntervalMillis}, so one fsync covers every
+ * append since the last; callers that need durability wait for it with
+ * {@link #awaitDurable(long)} (group commit). Readers stream records in
+ * offset order straight out of the mapping, so catching up on a backlog is a
+ * sequential read of the page cache. Whole segments are deleted, oldest
+ * first, once the log exceeds its size or age retention.
+ */
+public class TopicLog implements AutoCloseable {
+    private static final int HEADER_SIZE = 16;
+    private static final int LENGTH_OFFSET = 0;
+    private static final int CRC_OFFSET = 4;
+    private static final int TIMESTAMP_OFFSET = 8;
+    // every 64th record's position is kept in memory to seek without scanning a whole segment
+    private static final int INDEX_INTERVAL = 64;
+    private static final String SUFFIX = ".log";
+    private static final String OFFSETS_DIR = "consumers";
+    private static final String SEGMENT_SIZE_FILE = "segment-bytes";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long retentionBytes;
+    private final long retentionMillis;
+    private final long flushIntervalMillis;
+    // oldest first; the active one is last
+    private final List<Segment> segments = new ArrayList<>();
+    private final ConcurrentHashMap<String, MappedByteBuffer> consumerOffsets = new ConcurrentHashMap<>();
+    private final CRC32C crc = new CRC32C();
+    private final Thread flusher;
+    private Segment active;
+    private volatile long nextOffset;
+    private long durableOffset;
+    private volatile boolean closed;
+
+    /**
+     * Open (or recover) a log in the given directory.
+     *
+     * @param segmentBytes        size of each segment file
+     * @param retentionBytes      total size beyond which the oldest segments are deleted
+     * @param retentionMillis     age beyond which a segment's messages are deleted
+     * @param flushIntervalMillis how often appended data is forced to disk
+     */
+    public TopicLog(Path directory, int segmentBytes, long retentionBytes, long retentionMillis,
+                    long flushIntervalMillis) throws IOException {
+        if (segmentBytes < 4096)
+            throw new IllegalArgumentException("segmentBytes must be at least 4096");
+        if (flushIntervalMillis <= 0)
+            throw new IllegalArgumentException("flushIntervalMillis must be positive");
+        this.directory = Files.createDirectories(directory);
+        Files.createDirectories(directory.resolve(OFFSETS_DIR));
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.flushIntervalMillis = flushIntervalMillis;
+        checkSegmentBytes();
+        recover();
+        this.durableOffset = nextOffset;
+        this.flusher = new Thread(this::flushLoop, "topic-log-flusher-" + directory.getFileName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Append one message and return its offset. The message is readable
+     * immediately and durable after the next group flush.
+     */
+    public long append(byte[] payload) {
+        return append(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Append the remaining bytes of {@code payload} without changing its position.
+     */
+    public synchronized long append(ByteBuffer payload) {
+        if (closed)
+            throw new IllegalStateException("log is closed");
+        int length = payload.remaining();
+        int size = recordSize(length);
+        if (size > segmentBytes)
+            throw new IllegalArgumentException("message of " + length + " bytes does not fit a segment");
+        if (active.end + size > segmentBytes) {
+            roll();
+        }
+        long timestamp = System.currentTimeMillis();
+        MappedByteBuffer buf = active.buffer;
+        int at = active.end;
+        buf.putLong(at + TIMESTAMP_OFFSET, timestamp);
+        buf.put(at + HEADER_SIZE, payload, payload.position(), length);
+        crc.reset();
+        crc.update(buf.slice(at + TIMESTAMP_OFFSET, 8 + length));
+        buf.putInt(at + CRC_OFFSET, (int) crc.getValue());
+        buf.putInt(at + LENGTH_OFFSET, length + 1);
+        active.appended(at, timestamp);
+        active.end = at + size;
+        // publish last: readers trust end and count
+        active.count++;
+        return nextOffset++;
+    }
+
+    /**
+     * Block until every message up to and including {@code offset} has been
+     * forced to disk.
+     */
+    public void awaitDurable(long offset) throws InterruptedException {
+        synchronized (flusher) {
+            while (durableOffset <= offset && !closed) {
+                flusher.wait();
+            }
+        }
+    }
+
+    /**
+     * Deliver up to {@code maxRecords} messages starting at {@code fromOffset},
+     * in order, on the calling thread. The payload buffer is positioned on the
+     * message and only valid during the callback. Offsets already removed by
+     * retention are skipped.
+     *
+     * @return the offset after the last delivered message; pass it to the next call
+     */
+    public long read(long fromOffset, int maxRecords, RecordHandler handler) {
+        Segment[] view = snapshot();
+        int s = segmentFor(view, fromOffset);
+        long offset = Math.max(fromOffset, view[s].baseOffset);
+        int delivered = 0;
+        for (; s < view.length && delivered < maxRecords; s++) {
+            Segment segment = view[s];
+            int count = segment.count;
+            int relative = (int) (offset - segment.baseOffset);
+            if (relative >= count) {
+                continue;
+            }
+            ByteBuffer buf = segment.buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            int at = segment.positionOf(relative);
+            for (; relative < count && delivered < maxRecords; relative++, delivered++, offset++) {
+                int length = buf.getInt(at + LENGTH_OFFSET) - 1;
+                long timestamp = buf.getLong(at + TIMESTAMP_OFFSET);
+                buf.limit(at + HEADER_SIZE + length).position(at + HEADER_SIZE);
+                handler.onRecord(offset, timestamp, buf);
+                buf.limit(buf.capacity());
+                at += recordSize(length);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Offset of the oldest retained message.
+     */
+    public synchronized long startOffset() {
+        return segments.get(0).baseOffset;
+    }
+
+    /**
+     * Offset the next appended message will get.
+     */
+    public long endOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Where the consumer should resume: the offset after the last one it
+     * committed, or the start of the log for a new consumer.
+     */
+    public long committedOffset(String consumer) {
+        long committed = offsetsOf(consumer).getLong(0);
+        return Math.max(committed, startOffset());
+    }
+
+    /**
+     * Record that the consumer has processed everything before {@code nextOffset}.
+     * Made durable by the same group flush as appends.
+     */
+    public void commit(String consumer, long nextOffset) {
+        offsetsOf(consumer).putLong(0, nextOffset);
+    }
+
+    private MappedByteBuffer offsetsOf(String consumer) {
+        MappedByteBuffer buf = consumerOffsets.get(consumer);
+        return buf != null ? buf : consumerOffsets.computeIfAbsent(consumer, this::mapOffsets);
+    }
+
+    private MappedByteBuffer mapOffsets(String consumer) {
+        if (!consumer.matches("[A-Za-z0-9_.-]+"))
+            throw new IllegalArgumentException("consumer names must be [A-Za-z0-9_.-]+: " + consumer);
+        Path file = directory.resolve(OFFSETS_DIR).resolve(consumer + ".offset");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            return buf;
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to open offsets for " + consumer, e);
+        }
+    }
+
+    private synchronized Segment[] snapshot() {
+        return segments.toArray(new Segment[0]);
+    }
+
+    // last segment whose base offset is <= offset, or the oldest one
+    private static int segmentFor(Segment[] view, long offset) {
+        int lo = 0, hi = view.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (view[mid].baseOffset <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private static int recordSize(int length) {
+        return (HEADER_SIZE + length + 7) & ~7;
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            synchronized (flusher) {
+                try {
+                    flusher.wait(flushIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            flush();
+            enforceRetention();
+        }
+    }
+
+    /**
+     * Force appended messages and committed offsets to disk now, and wake
+     * anyone waiting in {@link #awaitDurable(long)}.
+     */
+    public void flush() {
+        Segment segment;
+        long upTo;
+        synchronized (this) {
+            segment = active;
+            upTo = nextOffset;
+        }
+        // outside the append lock: appends continue while the pages are written
+        segment.buffer.force();
+        for (MappedByteBuffer buf : consumerOffsets.values()) {
+            buf.force();
+        }
+        synchronized (flusher) {
+            durableOffset = Math.max(durableOffset, upTo);
+            flusher.notifyAll();
+        }
+    }
+
+    private void enforceRetention() {
+        List<Segment> expired = new ArrayList<>();
+        synchronized (this) {
+            long total = (long) segments.size() * segmentBytes;
+            long cutoff = System.currentTimeMillis() - retentionMillis;
+            while (segments.size() > 1) {
+                Segment oldest = segments.get(0);
+                if (total <= retentionBytes && oldest.lastTimestamp >= cutoff) {
+                    break;
+                }
+                segments.remove(0);
+                total -= segmentBytes;
+                expired.add(oldest);
+            }
+        }
+        for (Segment segment : expired) {
+            // open readers keep their mapping; the file just stops being listed
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                System.err.printf("Failed to delete expired segment %s: %s%n", segment.file, e);
+            }
+        }
+    }
+
+    // the segment size is fixed for the life of a log: every record position depends on it
+    private void checkSegmentBytes() throws IOException {
+        Path file = directory.resolve(SEGMENT_SIZE_FILE);
+        if (Files.exists(file)) {
+            int stored = Integer.parseInt(Files.readString(file).trim());
+            if (stored != segmentBytes)
+                throw new IOException("log in " + directory + " has " + stored
+                        + "-byte segments; cannot open it with segmentBytes " + segmentBytes);
+            return;
+        }
+        // a log from before the size was recorded: its segment files carry the size
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path segment : stream) {
+                long size = Files.size(segment);
+                if (size != segmentBytes)
+                    throw new IOException("segment " + segment + " has " + size
+                            + " bytes; cannot open it with segmentBytes " + segmentBytes);
+            }
+        }
+        Files.writeString(file, Integer.toString(segmentBytes));
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        // zero-padded names sort by base offset
+        files.sort(null);
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            Segment segment = Segment.map(file, base, segmentBytes);
+            scan(segment);
+            segments.add(segment);
+            nextOffset = base + segment.count;
+        }
+        if (segments.isEmpty()) {
+            roll();
+        } else {
+            active = segments.get(segments.size() - 1);
+        }
+    }
+
+    // count the valid records and zero a torn one so later appends start clean
+    private void scan(Segment segment) {
+        MappedByteBuffer buf = segment.buffer;
+        int at = 0;
+        while (at + HEADER_SIZE <= segmentBytes) {
+            int length = buf.getInt(at + LENGTH_OFFSET) - 1;
+            if (length < 0 || length > segmentBytes - at - HEADER_SIZE || at + recordSize(length) > segmentBytes) {
+                break;
+            }
+            crc.reset();
+            crc.update(buf.slice(at + TIMESTAMP_OFFSET, 8 + length));
+            if ((int) crc.getValue() != buf.getInt(at + CRC_OFFSET)) {
+                break;
+            }
+            segment.appended(at, buf.getLong(at + TIMESTAMP_OFFSET));
+            segment.count++;
+            at += recordSize(length);
+        }
+        segment.end = at;
+        int stored = at + HEADER_SIZE <= segmentBytes ? buf.getInt(at + LENGTH_OFFSET) : 0;
+        if (stored != 0) {
+            int torn = at + HEADER_SIZE + Math.min(Math.max(0, stored - 1), segmentBytes - at - HEADER_SIZE);
+            for (int i = at; i < torn; i++) {
+                buf.put(i, (byte) 0);
+            }
+            buf.putInt(at + LENGTH_OFFSET, 0);
+        }
+    }
+
+    private void roll() {
+        try {
+            if (active != null) {
+                active.buffer.force();
+            }
+            Path file = directory.resolve(String.format("%020d%s", nextOffset, SUFFIX));
+            active = Segment.map(file, nextOffset, segmentBytes);
+            segments.add(active);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to roll topic log segment", e);
+        }
+    }
+
+    /**
+     * Stop accepting appends, flush, and stop the flusher. Mappings are
+     * released when collected.
+     */
+    @Override
+    public void close() {
+        // under the append lock, so every append that got in is covered by the flush below
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        synchronized (flusher) {
+            flusher.notifyAll();
+        }
+        flusher.interrupt();
+    }
+
+    /**
+     * Receives messages from {@link #read}.
+     */
+    public interface RecordHandler {
+        void onRecord(long offset, long timestampMillis, ByteBuffer payload);
+    }
+
+    /**
+     * One mapped segment file: its record count, bytes used and a sparse
+     * position index.
+     */
+    private static final class Segment {
+        final Path file;
+        final long baseOffset;
+        final MappedByteBuffer buffer;
+        volatile int count;
+        int end;
+        long lastTimestamp;
+        // position of record i * INDEX_INTERVAL; grown by the appender, read by readers below count
+        volatile int[] index = new int[16];
+
+        private Segment(Path file, long baseOffset, MappedByteBuffer buffer) {
+            this.file = file;
+            this.baseOffset = baseOffset;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path file, long baseOffset, int bytes) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                return new Segment(file, baseOffset, buffer);
+            }
+        }
+
+        // called before count is incremented for the record at position at
+        void appended(int at, long timestamp) {
+            lastTimestamp = timestamp;
+            int n = count;
+            if (n % INDEX_INTERVAL == 0) {
+                int slot = n / INDEX_INTERVAL;
+                int[] idx = index;
+                if (slot == idx.length) {
+                    idx = Arrays.copyOf(idx, slot * 2);
+                }
+                idx[slot] = at;
+                index = idx;
+            }
+        }
+
+        // nearest indexed record, then walk the length prefixes
+        int positionOf(int relative) {
+            int at = index[relative / INDEX_INTERVAL];
+            for (int r = relative - relative % INDEX_INTERVAL; r < relative; r++) {
+                at += recordSize(buffer.getInt(at + LENGTH_OFFSET) - 1);
+            }
+            return at;
+        }
+    }
+}
@@ -1,7 +1,10 @@
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -12,9 +15,127 @@ public interface PriceObserver {
      * Called when the stock price is updated.
      *
      * @param stock the Stock subject
-     * @param price the new price (use BigDecimal in prod for money)
+     * @param price the new price, converted from the stock's fixed-point price
      */
     void onPriceUpdate(Stock stock, double price);
+
+    /**
+     * Called when the stock price is updated, with the exact fixed-point price
+     * in units of {@code stock.getScale()}. Override this rather than the
+     * double variant when money must not be rounded; by default it converts
+     * and delegates.
+     *
+     * @param stock       the Stock subject
+     * @param scaledPrice the new price as a scaled long
+     */
+    default void onScaledPriceUpdate(Stock stock, long scaledPrice) {
+        onPriceUpdate(stock, stock.getScale().toDouble(scaledPrice));
+    }
+}
+
+/**
+ * Observer that receives ticks in blocks rather than one call per tick.
+ */
+public interface BatchPriceObserver {
+    /**
+     * Called with a contiguous block of ticks in arrival order. Only the first
+     * {@code count} entries are valid, and the arrays are reused once this
+     * returns, so copy anything that must outlive the call.
+     *
+     * @param stock      the Stock subject
+     * @param prices     tick prices as scaled longs, in units of {@code stock.getScale()}
+     * @param timestamps tick times in epoch nanoseconds
+     * @param count      number of ticks in this batch
+     */
+    void onPriceBatch(Stock stock, long[] prices, long[] timestamps, int count);
+}
+
+/**
+ * Strategy for delivering a stock's price ticks to its observers.
+ */
+public interface PriceDispatcher {
+    /**
+     * Deliver a tick to the stock's current observers. Called on the thread
+     * that invoked {@link Stock#updateScaledPrice(long)}, so it should not block.
+     *
+     * @param stock       the Stock subject
+     * @param scaledPrice the new price in units of {@code stock.getScale()}
+     */
+    void dispatch(Stock stock, long scaledPrice);
+
+    /**
+     * Deliver a tick to a single observer, e.g. one whose threshold
+     * subscription fired. Defaults to delivering on the calling thread;
+     * dispatchers with their own queue or consumer override it so alerts
+     * are delivered there, in order with the observer's other ticks.
+     */
+    default void dispatchTo(Stock stock, PriceObserver observer, long scaledPrice) {
+        stock.deliver(observer, scaledPrice, stock.publishStamp());
+    }
+
+    /**
+     * Called after an observer is registered.
+     */
+    default void observerAdded(Stock stock, PriceObserver observer) {
+    }
+
+    /**
+     * Called after an observer is removed so per-observer state can be released.
+     */
+    default void observerRemoved(Stock stock, PriceObserver observer) {
+    }
+
+    /**
+     * Stop delivering and release threads. Call at application shutdown.
+     */
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException;
+}
+
+/**
+ * Default dispatcher: one executor task per observer per tick.
+ */
+public class ExecutorDispatcher implements PriceDispatcher {
+    private final ExecutorService executor;
+
+    public ExecutorDispatcher(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Each observer is notified in its own task; exceptions are caught
+     * per-observer by {@link Stock#deliver}.
+     */
+    @Override
+    public void dispatch(Stock stock, long price) {
+        long stamp = stock.publishStamp();
+        for (PriceObserver observer : stock.observers()) {
+            submit(stock, observer, price, stamp);
+        }
+    }
+
+    @Override
+    public void dispatchTo(Stock stock, PriceObserver observer, long price) {
+        submit(stock, observer, price, stock.publishStamp());
+    }
+
+    // counted before submit, so the task cannot complete before it is counted; a rejected task is uncounted
+    private void submit(Stock stock, PriceObserver observer, long price, long stamp) {
+        stock.recordEnqueued(observer, stamp);
+        try {
+            executor.submit(() -> stock.deliver(observer, price, stamp));
+        } catch (RejectedExecutionException e) {
+            stock.recordDropped(observer, stamp);
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(timeout, unit)) {
+            executor.shutdownNow();
+        }
+    }
 }
 
 /**
@@ -25,28 +146,73 @@ public class Stock {
     // thread-safe list for observers — good for many reads and few writes
     private final CopyOnWriteArrayList<PriceObserver> observers = new CopyOnWriteArrayList<>();
 
-    // volatile to make reads of price consistent across threads
-    private volatile double price;
+    // fixed-point price in units of scale; volatile to make reads consistent across threads
+    private final PriceScale scale;
+    private volatile long price;
+
+    // strategy for asynchronous notifications; injected for testability
+    private final PriceDispatcher notifier;
+
+    // optional tick history; key is written before the volatile journal so readers see both
+    private volatile TickJournal journal;
+    private long journalKey;
+
+    // batch observers, each with its own accumulator
+    private final CopyOnWriteArrayList<TickBatcher> batchers = new CopyOnWriteArrayList<>();
 
-    // executor for asynchronous notifications; injected for testability
-    private final ExecutorService notifier;
+    // threshold subscriptions; created on first subscribe
+    private volatile ThresholdIndex alerts;
 
-    // public constructor (production could inject ExecutorService)
+    // fan-out instrumentation; null while disabled so the hot path pays one read
+    private volatile StockMetrics metrics;
+
+    // wall clock anchored once and advanced with nanoTime: cheap, monotonic tick timestamps
+    private static final long EPOCH_NANOS_BASE = System.currentTimeMillis() * 1_000_000L;
+    private static final long NANO_TIME_BASE = System.nanoTime();
+
+    // public constructor: notifications go through the process-wide runtime,
+    // so thousands of stocks share virtual-thread mailboxes instead of owning pools
     public Stock(String symbol) {
-        this(symbol, Executors.newCachedThreadPool());
+        this(symbol, NotificationRuntime.shared().dispatcher());
     }
 
     // package-visible constructor for tests (allows injecting custom executor)
     Stock(String symbol, ExecutorService notifier) {
+        this(symbol, new ExecutorDispatcher(notifier));
+    }
+
+    // opt-in delivery strategies, e.g. ConflatingDispatcher
+    public Stock(String symbol, PriceDispatcher notifier) {
+        this(symbol, notifier, PriceScale.CENTS);
+    }
+
+    // instruments quoted in other tick sizes, e.g. PriceScale.of("0.0005")
+    public Stock(String symbol, PriceDispatcher notifier, PriceScale scale) {
+        if (notifier == null)
+            throw new IllegalArgumentException("notifier cannot be null");
+        if (scale == null)
+            throw new IllegalArgumentException("scale cannot be null");
         this.symbol = symbol;
         this.notifier = notifier;
+        this.scale = scale;
     }
 
     public String getSymbol() {
         return symbol;
     }
 
+    public PriceScale getScale() {
+        return scale;
+    }
+
     public double getPrice() {
+        return scale.toDouble(price);
+    }
+
+    /**
+     * Exact price in units of {@link #getScale()}.
+     */
+    public long getScaledPrice() {
         return price;
     }
 
@@ -56,63 +222,277 @@ public class Stock {
     public void registerObserver(PriceObserver o) {
         if (o == null)
             throw new IllegalArgumentException("observer cannot be null");
-        observers.addIfAbsent(o);
+        if (observers.addIfAbsent(o)) {
+            notifier.observerAdded(this, o);
+        }
     }
 
     /**
      * Remove an observer.
      */
     public void removeObserver(PriceObserver o) {
-        observers.remove(o);
+        if (observers.remove(o)) {
+            notifier.observerRemoved(this, o);
+        }
     }
 
     /**
-     * Update the price and notify observers.
+     * Register an observer that receives ticks in batches of up to
+     * {@code maxBatch}, or whatever has accumulated after {@code maxDelay}.
+     */
+    public void registerBatchObserver(BatchPriceObserver o, int maxBatch, long maxDelay, TimeUnit unit) {
+        if (o == null)
+            throw new IllegalArgumentException("observer cannot be null");
+        synchronized (batchers) {
+            for (TickBatcher b : batchers) {
+                if (b.observer() == o)
+                    return;
+            }
+            batchers.add(new TickBatcher(this, o, maxBatch, maxDelay, unit));
+        }
+    }
+
+    /**
+     * Remove a batch observer after delivering its pending ticks.
+     */
+    public void removeBatchObserver(BatchPriceObserver o) {
+        synchronized (batchers) {
+            for (TickBatcher b : batchers) {
+                if (b.observer() == o) {
+                    batchers.remove(b);
+                    b.close();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Notify the observer only when the condition fires, instead of on every
+     * tick. Conditions are indexed by level, so a tick wakes only the
+     * subscriptions it triggers.
+     */
+    public ThresholdIndex.Subscription subscribe(PriceCondition condition, PriceObserver observer) {
+        if (condition == null || observer == null)
+            throw new IllegalArgumentException("condition and observer cannot be null");
+        ThresholdIndex index = alerts;
+        if (index == null) {
+            synchronized (this) {
+                index = alerts;
+                if (index == null) {
+                    alerts = index = new ThresholdIndex(this);
+                }
+            }
+        }
+        return index.subscribe(condition, observer);
+    }
+
+    /**
+     * Current observers, for dispatchers. Iteration is snapshot-safe.
+     */
+    List<PriceObserver> observers() {
+        return observers;
+    }
+
+    /**
+     * Update the price and notify observers. The price is rounded to the
+     * nearest tick of {@link #getScale()}.
+     */
+    public void updatePrice(double newPrice) {
+        updateScaledPrice(scale.fromDouble(newPrice));
+    }
+
+    /**
+     * Update the price, given exactly in units of {@link #getScale()}, and
+     * notify observers. This is the allocation-free path for feeds that
+     * already carry fixed-point prices.
      * This method is thread-safe: price is volatile; observers list is thread-safe.
      * Notifications are dispatched asynchronously (fire-and-forget) — exceptions
-     * are isolated.
+     * are isolated. {@code Long.MIN_VALUE} is reserved by the dispatchers and
+     * rejected.
      */
-    public void updatePrice(double newPrice) {
+    public void updateScaledPrice(long newPrice) {
+        if (newPrice == Long.MIN_VALUE)
+            throw new IllegalArgumentException("Long.MIN_VALUE is reserved and not a valid price");
+        if (!scale.isOnTick(newPrice))
+            throw new IllegalArgumentException("price not on tick: " + scale.format(newPrice));
         this.price = newPrice;
+        TickJournal j = journal;
+        if (j != null) {
+            j.append(journalKey, newPrice);
+        }
+        if (!batchers.isEmpty()) {
+            long now = epochNanos();
+            for (TickBatcher b : batchers) {
+                b.add(newPrice, now);
+            }
+        }
+        ThresholdIndex index = alerts;
+        if (index != null) {
+            index.onTick(newPrice);
+        }
         notifyObserversAsync(newPrice);
     }
 
     /**
-     * Notify observers asynchronously using the notifier executor.
-     * Each observer is notified in its own task; exceptions are caught
-     * per-observer.
-     */
-    private void notifyObserversAsync(double newPrice) {
-        for (PriceObserver observer : observers) {
-            notifier.submit(() -> {
-                try {
-                    observer.onPriceUpdate(this, newPrice);
-                } catch (Throwable t) {
-                    // swallow and log — one bad observer should not impact others
-                    System.err.printf("Observer %s failed for stock %s: %s%n",
-                            observer.getClass().getSimpleName(), symbol, t.getMessage());
-                    t.printStackTrace(System.err);
-                    // increment metrics/counters in a real system
-                }
-            });
+     * Current time in epoch nanoseconds, as stamped on ticks.
+     */
+    static long epochNanos() {
+        return EPOCH_NANOS_BASE + (System.nanoTime() - NANO_TIME_BASE);
+    }
+
+    /**
+     * Record every subsequent tick in the journal so late or restarted
+     * observers can catch up via {@link TickJournal#replayBySequence}.
+     * Pass null to stop journaling.
+     */
+    public void enableJournal(TickJournal journal) {
+        if (journal != null) {
+            this.journalKey = TickJournal.symbolKey(symbol);
+        }
+        this.journal = journal;
+    }
+
+    /**
+     * Notify observers asynchronously using the notifier.
+     */
+    private void notifyObserversAsync(long newPrice) {
+        notifier.dispatch(this, newPrice);
+    }
+
+    /**
+     * Notify one observer through the notifier, e.g. a fired threshold subscription.
+     */
+    void notifyOne(PriceObserver observer, long newPrice) {
+        notifier.dispatchTo(this, observer, newPrice);
+    }
+
+    /**
+     * Start recording per-observer latency, in-flight, failure and throughput
+     * counters. Returns the live metrics (existing ones if already enabled).
+     */
+    public synchronized StockMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new StockMetrics(symbol);
+        }
+        return metrics;
+    }
+
+    /**
+     * Stop recording; the hot path goes back to a single null check.
+     */
+    public synchronized void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Live metrics, or null while disabled.
+     */
+    public StockMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Publish time for latency measurement, or 0 while metrics are disabled.
+     * Dispatchers take one stamp per tick and pass it through to delivery.
+     */
+    long publishStamp() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Dispatchers call this when a delivery for the observer is queued.
+     */
+    void recordEnqueued(Object observer, long stamp) {
+        StockMetrics m = metrics;
+        if (m != null && stamp != 0) {
+            m.enqueued(observer);
+        }
+    }
+
+    /**
+     * Dispatchers call this when a queued delivery is discarded unseen.
+     */
+    void recordDropped(Object observer, long stamp) {
+        StockMetrics m = metrics;
+        if (m != null && stamp != 0) {
+            m.dropped(observer);
+        }
+    }
+
+    /**
+     * Invoke a single observer outside of any dispatcher, e.g. for replay.
+     */
+    void deliver(PriceObserver observer, long newPrice) {
+        deliver(observer, newPrice, 0);
+    }
+
+    /**
+     * Invoke a single observer; exceptions are isolated so one bad observer
+     * does not impact others. Dispatchers call this from their own threads.
+     *
+     * @param stamp the tick's {@link #publishStamp()}
+     */
+    void deliver(PriceObserver observer, long newPrice, long stamp) {
+        boolean failed = false;
+        try {
+            observer.onScaledPriceUpdate(this, newPrice);
+        } catch (Throwable t) {
+            // swallow and log — one bad observer should not impact others
+            failed = true;
+            System.err.printf("Observer %s failed for stock %s: %s%n",
+                    observer.getClass().getSimpleName(), symbol, t.getMessage());
+            t.printStackTrace(System.err);
+        }
+        StockMetrics m = metrics;
+        if (m != null && stamp != 0) {
+            m.completed(observer, stamp, 1, failed);
+        }
+    }
+
+    /**
+     * Batch counterpart of {@link #deliver}: same isolation of observer failures.
+     */
+    void deliverBatch(BatchPriceObserver observer, long[] prices, long[] timestamps, int count, long stamp) {
+        boolean failed = false;
+        try {
+            observer.onPriceBatch(this, prices, timestamps, count);
+        } catch (Throwable t) {
+            failed = true;
+            System.err.printf("Batch observer %s failed for stock %s: %s%n",
+                    observer.getClass().getSimpleName(), symbol, t.getMessage());
+            t.printStackTrace(System.err);
+        }
+        StockMetrics m = metrics;
+        if (m != null && stamp != 0) {
+            m.completed(observer, stamp, count, failed);
         }
     }
 
     /**
      * Shutdown notifier cleanly. Call at application shutdown.
+     * Pending batches are delivered first.
      */
     public void shutdownNotifier(long timeout, TimeUnit unit) throws InterruptedException {
-        notifier.shutdown();
-        if (!notifier.awaitTermination(timeout, unit)) {
-            notifier.shutdownNow();
+        synchronized (batchers) {
+            for (TickBatcher b : batchers) {
+                b.close();
+            }
+            batchers.clear();
         }
+        notifier.shutdown(timeout, unit);
     }
 }
 
 /**
  * Example concrete observer printing updates.
  */
-public class ConsoleObserver implements PriceObserver {
+public class ConsoleObserver implements PriceObserver, BatchPriceObserver {
+    // owned, not per-thread: the shared runtime delivers on short-lived virtual threads, so a
+    // per-thread buffer would be rebuilt for every burst. Locked because other dispatchers may
+    // call one observer from several threads; PrintStream.write locks the stream anyway
+    private final Line line = new Line();
+
     private final String name;
 
     public ConsoleObserver(String name) {
@@ -125,14 +505,97 @@ public class ConsoleObserver implements PriceObserver {
         // simulate potential error in observer
         // throw new RuntimeException("simulated observer failure");
     }
+
+    // exact fixed-point formatting straight into bytes: no boxing, no format string parsing
+    @Override
+    public void onScaledPriceUpdate(Stock stock, long scaledPrice) {
+        synchronized (line) {
+            line.reset().put('[').put(name).put("] ").put(stock.getSymbol()).put(" price updated to ")
+                    .putPrice(stock.getScale(), scaledPrice).put('\n');
+            line.writeTo(System.out);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    // one line per batch instead of one printf per tick
+    @Override
+    public void onPriceBatch(Stock stock, long[] prices, long[] timestamps, int count) {
+        long low = prices[0], high = prices[0];
+        for (int i = 1; i < count; i++) {
+            low = Math.min(low, prices[i]);
+            high = Math.max(high, prices[i]);
+        }
+        PriceScale scale = stock.getScale();
+        synchronized (line) {
+            line.reset().put('[').put(name).put("] ").put(stock.getSymbol()).put(' ').put(count)
+                    .put(" ticks, last ").putPrice(scale, prices[count - 1])
+                    .put(" (low ").putPrice(scale, low).put(", high ").putPrice(scale, high).put(")\n");
+            line.writeTo(System.out);
+        }
+    }
+
+    /**
+     * Reusable ASCII line buffer.
+     */
+    private static final class Line {
+        private byte[] buf = new byte[128];
+        private int length;
+
+        Line reset() {
+            length = 0;
+            return this;
+        }
+
+        Line put(char c) {
+            ensure(1);
+            buf[length++] = (byte) (c < 128 ? c : '?');
+            return this;
+        }
+
+        Line put(String s) {
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                buf[length++] = (byte) (c < 128 ? c : '?');
+            }
+            return this;
+        }
+
+        Line put(long n) {
+            return putPrice(WHOLE, n);
+        }
+
+        Line putPrice(PriceScale scale, long scaledPrice) {
+            ensure(24);
+            length = scale.format(scaledPrice, buf, length);
+            return this;
+        }
+
+        void writeTo(java.io.PrintStream out) {
+            out.write(buf, 0, length);
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > buf.length) {
+                buf = java.util.Arrays.copyOf(buf, Math.max(buf.length * 2, length + extra));
+            }
+        }
+
+        private static final PriceScale WHOLE = PriceScale.of(0, 1);
+    }
 }
 
 /**
  * Demo entry point.
  */
 public class finalCode {
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws InterruptedException, IOException {
         Stock amzn = new Stock("AMZN");
+        StockMetrics metrics = amzn.enableMetrics();
         PriceObserver email = new ConsoleObserver("EmailAlert");
         PriceObserver mobile = new ConsoleObserver("MobileApp");
         PriceObserver analytics = new ConsoleObserver("Analytics");
@@ -153,8 +616,84 @@ public class finalCode {
         // remove an observer
         amzn.removeObserver(mobile);
         amzn.updatePrice(3301.00);
+        Thread.sleep(100);
+        System.out.print(metrics.snapshot());
 
         // shutdown notifier before exit
         amzn.shutdownNotifier(1, TimeUnit.SECONDS);
+
+        // conflation: a burst of ticks collapses to the latest price per observer
+        ConflatingDispatcher conflating = new ConflatingDispatcher(Executors.newFixedThreadPool(2));
+        Stock goog = new Stock("GOOG", conflating);
+        goog.registerObserver(analytics);
+        for (int i = 0; i < 1_000; i++) {
+            goog.updatePrice(140.00 + i * 0.01);
+        }
+        Thread.sleep(200);
+        System.out.printf("GOOG: %d ticks conflated away%n", conflating.totalDropped());
+        goog.shutdownNotifier(1, TimeUnit.SECONDS);
+
+        // ring buffer: single feed thread publishes into preallocated slots
+        Stock msft = new Stock("MSFT", new RingBufferDispatcher(1024, RingBufferDispatcher.WaitStrategy.blocking()));
+        msft.registerObserver(email);
+        msft.updatePrice(415.20);
+        msft.updatePrice(415.35);
+        msft.shutdownNotifier(1, TimeUnit.SECONDS);
+
+        // journal: a late observer replays history it missed
+        try (TickJournal journal = new TickJournal(Files.createTempDirectory("ticks"), 1 << 16)) {
+            Stock nvda = new Stock("NVDA");
+            nvda.enableJournal(journal);
+            nvda.updatePrice(120.10);
+            nvda.updatePrice(121.45);
+            long replayed = journal.replayBySequence(nvda, 1, Long.MAX_VALUE, new ConsoleObserver("LateJoiner"));
+            System.out.printf("NVDA: replayed %d ticks%n", replayed);
+            nvda.shutdownNotifier(1, TimeUnit.SECONDS);
+        }
+
+        // batching: analytics gets blocks of up to 500 ticks or every 50ms
+        Stock tsla = new Stock("TSLA");
+        ConsoleObserver bulk = new ConsoleObserver("BulkAnalytics");
+        tsla.registerBatchObserver(bulk, 500, 50, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 1_200; i++) {
+            tsla.updatePrice(250.00 + (i % 100) * 0.05);
+        }
+        tsla.shutdownNotifier(1, TimeUnit.SECONDS);
+
+        // fixed-point: exact prices on a 0.05 tick, formatted without garbage
+        Stock spx = new Stock("SPX", new ExecutorDispatcher(Executors.newSingleThreadExecutor()), PriceScale.of("0.05"));
+        spx.registerObserver(email);
+        spx.updateScaledPrice(spx.getScale().parse("5842.35"));
+        spx.updatePrice(5842.42); // rounds to the tick: 5842.40
+        spx.shutdownNotifier(1, TimeUnit.SECONDS);
+
+        // threshold subscriptions: only woken when the level is crossed
+        Stock meta = new Stock("META");
+        meta.subscribe(PriceCondition.above(600.00), new ConsoleObserver("BreakoutAlert"));
+        meta.subscribe(PriceCondition.exitsRange(580.00, 600.00), new ConsoleObserver("RangeAlert"));
+        meta.updatePrice(590.00);
+        meta.updatePrice(595.00);
+        meta.updatePrice(601.50);
+        meta.shutdownNotifier(1, TimeUnit.SECONDS);
+
+        // exchange: symbols pinned to shard threads, in-order delivery per symbol
+        Exchange exchange = new Exchange(2, 1024);
+        exchange.list("AAPL").registerObserver(mobile);
+        exchange.list("ORCL").registerObserver(mobile);
+        exchange.updatePrice("AAPL", 228.10);
+        exchange.updatePrice("ORCL", 171.25);
+        exchange.updatePrice("AAPL", 228.15);
+
+        // rolling analytics: O(1) per tick, read lock-free from this thread
+        RollingAnalytics rolling = new RollingAnalytics(100, 1, TimeUnit.MILLISECONDS, 16);
+        exchange.list("QQQ").registerObserver(rolling);
+        for (int i = 0; i < 10_000; i++) {
+            exchange.updateScaledPrice("QQQ", 48_000 + (i % 200));
+        }
+        exchange.shutdown(1, TimeUnit.SECONDS);
+        System.out.println(rolling.snapshot("QQQ"));
+
+        // drain every stock on the shared runtime
+        NotificationRuntime.shared().shutdown(1, TimeUnit.SECONDS);
     }
 }
@@ -0,0 +1,23 @@
+import java.util.List;
+
+/**
+ * A physical database connection. Not thread-safe: the pool hands each one to
+ * a single thread at a time.
+ */
+interface Connection extends AutoCloseable {
+    List<Object[]> query(String sql, Object... params);
+
+    int update(String sql, Object... params);
+
+    // with auto-commit on (the default) every update commits on its own
+    void setAutoCommit(boolean autoCommit);
+
+    void commit();
+
+    void rollback();
+
+    boolean isValid();
+
+    @Override
+    void close();
+}
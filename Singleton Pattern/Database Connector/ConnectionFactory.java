@@ -0,0 +1,6 @@
+/**
+ * Opens physical connections for a ConnectionPool.
+ */
+interface ConnectionFactory {
+    Connection open();
+}
@@ -0,0 +1,660 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded pool of connections.
+ *
+ * Borrowing first tries the connection this thread returned last, then any
+ * idle one, then opens a new one while below maxSize; each of those steps is
+ * a single CAS on the connection's state, with no lock. When the pool is
+ * exhausted borrowers queue and park; a returned connection passes straight
+ * to the oldest waiter, so waiters are served in arrival order. While anyone
+ * is queued, new borrowers join the queue rather than taking the fast path
+ * past them.
+ *
+ * Each borrow gets its own handle, returned with close(); closing it again
+ * does nothing, and any other use after close throws, so a stale handle can
+ * never reach a connection that has since gone to another borrower. A
+ * connection returned with auto-commit off has its open transaction rolled
+ * back first. With a leak threshold set, the pool
+ * records where each connection was borrowed and reports any held longer
+ * than the threshold; capturing the call site costs a stack walk per borrow,
+ * so it is off by default.
+ *
+ * The first minSize connections can be opened in the background, and a
+ * housekeeper can probe idle connections periodically, replacing broken
+ * ones off the request path.
+ */
+class ConnectionPool implements AutoCloseable {
+    private static final int IDLE = 0;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = 2;
+    private static final Object CANCELLED = new Object();
+    private static final int WARM_UP_THREADS = 8;
+    private static final int OPEN_ATTEMPTS = 3;
+
+    private final ConnectionFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutNanos;
+    private final long leakThresholdNanos;
+
+    // copy-on-write; readers scan without locking
+    private volatile PooledConnection[] slots = new PooledConnection[0];
+    // open connections plus ones being opened
+    private final AtomicInteger size = new AtomicInteger();
+    // borrowers parked because the pool is exhausted, oldest first
+    private final ConcurrentLinkedQueue<Waiter> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ThreadLocal<PooledConnection> lastUsed = new ThreadLocal<>();
+    private final ScheduledExecutorService housekeeper;
+    private final CompletableFuture<Void> warmedUp;
+    private volatile boolean closed;
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    ConnectionPool(ConnectionFactory factory, int minSize, int maxSize) {
+        this(factory, minSize, maxSize, 30_000, 0);
+    }
+
+    ConnectionPool(ConnectionFactory factory, int minSize, int maxSize, long borrowTimeoutMillis, long leakThresholdMillis) {
+        this(factory, minSize, maxSize, borrowTimeoutMillis, leakThresholdMillis, 0, false);
+    }
+
+    /**
+     * @param healthCheckMillis how often idle connections are probed; 0 disables probing
+     * @param warmUpAsync       open the first minSize connections in the background
+     *                          instead of in the constructor; see warmedUp()
+     */
+    ConnectionPool(ConnectionFactory factory, int minSize, int maxSize, long borrowTimeoutMillis,
+                   long leakThresholdMillis, long healthCheckMillis, boolean warmUpAsync) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+            throw new IllegalArgumentException("need 0 <= minSize <= maxSize and maxSize >= 1");
+        if (borrowTimeoutMillis < 0 || leakThresholdMillis < 0 || healthCheckMillis < 0)
+            throw new IllegalArgumentException("timeouts must be >= 0");
+        this.factory = factory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis);
+
+        if (warmUpAsync) {
+            warmedUp = warmUp();
+        } else {
+            for (int i = 0; i < minSize; i++) {
+                open(minSize, true).state.set(IDLE);
+            }
+            warmedUp = CompletableFuture.completedFuture(null);
+        }
+
+        if (leakThresholdMillis > 0 || healthCheckMillis > 0) {
+            housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "pool-housekeeper");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            housekeeper = null;
+        }
+        if (leakThresholdMillis > 0) {
+            long period = Math.max(leakThresholdMillis / 2, 10);
+            housekeeper.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        }
+        if (healthCheckMillis > 0) {
+            housekeeper.scheduleWithFixedDelay(this::probe, healthCheckMillis, healthCheckMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Opens and validates minSize connections on a few background threads.
+     * Borrowers arriving meanwhile are not held up: they open a connection
+     * of their own if none is ready, which warm-up then counts towards minSize.
+     */
+    private CompletableFuture<Void> warmUp() {
+        if (minSize == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        AtomicInteger ids = new AtomicInteger();
+        ExecutorService opener = Executors.newFixedThreadPool(Math.min(minSize, WARM_UP_THREADS), r -> {
+            Thread t = new Thread(r, "pool-warmup-" + ids.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        CompletableFuture<?>[] opens = new CompletableFuture<?>[minSize];
+        for (int i = 0; i < minSize; i++) {
+            opens[i] = CompletableFuture.runAsync(() -> {
+                PooledConnection c = open(minSize, true);
+                if (c != null) {
+                    makeAvailable(c);
+                }
+            }, opener);
+        }
+        return CompletableFuture.allOf(opens).whenComplete((v, e) -> opener.shutdown());
+    }
+
+    // completes once minSize connections are open; exceptionally if warm-up could not open them
+    public CompletableFuture<Void> warmedUp() {
+        return warmedUp;
+    }
+
+    public Connection borrow() {
+        return borrow(borrowTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public Connection borrow(long timeout, TimeUnit unit) {
+        if (closed)
+            throw new IllegalStateException("pool is closed");
+        borrows.increment();
+        if (waiting.get() == 0) {
+            PooledConnection c = lastUsed.get();
+            if (c != null && c.state.compareAndSet(IDLE, IN_USE)) {
+                return checkedOut(c);
+            }
+            c = scan();
+            if (c == null) {
+                c = grow();
+            }
+            if (c != null) {
+                return checkedOut(c);
+            }
+        }
+        return await(unit.toNanos(timeout));
+    }
+
+    private Connection await(long timeoutNanos) {
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        Waiter w = new Waiter();
+        waiting.incrementAndGet();
+        queue.add(w);
+        try {
+            // something may have come back between the fast path and queueing
+            PooledConnection c = scan();
+            if (c == null) {
+                c = grow();
+            }
+            if (c != null) {
+                if (!w.slot.compareAndSet(null, CANCELLED)) {
+                    // a returning thread handed us one as well; pass it on
+                    release((PooledConnection) w.slot.get());
+                }
+                recordWait(start);
+                return checkedOut(c);
+            }
+            Object o;
+            while ((o = w.slot.get()) == null) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0 || Thread.interrupted()) {
+                    if (w.slot.compareAndSet(null, CANCELLED)) {
+                        if (left > 0) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException("interrupted while waiting for a connection");
+                        }
+                        recordWait(start);
+                        timeouts.increment();
+                        throw new IllegalStateException(String.format(
+                                "no connection available after %d ms (active %d, max %d)",
+                                TimeUnit.NANOSECONDS.toMillis(timeoutNanos), active(), maxSize));
+                    }
+                    if (left > 0) {
+                        Thread.currentThread().interrupt();
+                    }
+                    // a connection arrived just in time
+                    continue;
+                }
+                LockSupport.parkNanos(this, left);
+            }
+            if (o == CANCELLED)
+                throw new IllegalStateException("pool is closed");
+            recordWait(start);
+            return checkedOut((PooledConnection) o);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private PooledConnection scan() {
+        PooledConnection[] s = slots;
+        int n = s.length;
+        if (n == 0) {
+            return null;
+        }
+        // start at a random slot so concurrent borrowers don't all fight over slot 0
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            PooledConnection c = s[(start + i) % n];
+            if (c.state.get() == IDLE && c.state.compareAndSet(IDLE, IN_USE)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    // opens a connection if below maxSize; it starts out IN_USE for the caller
+    private PooledConnection grow() {
+        return open(maxSize, false);
+    }
+
+    /**
+     * Opens a connection if fewer than limit are open, or returns null. With
+     * validate, the new connection must pass isValid() and failures are
+     * retried with backoff; borrowers don't validate, so they never wait for it.
+     */
+    private PooledConnection open(int limit, boolean validate) {
+        for (;;) {
+            int n = size.get();
+            if (n >= limit) {
+                return null;
+            }
+            if (size.compareAndSet(n, n + 1)) {
+                break;
+            }
+        }
+        Connection raw = null;
+        for (int attempt = 1; raw == null; attempt++) {
+            RuntimeException failure;
+            try {
+                raw = factory.open();
+                if (validate && !raw.isValid()) {
+                    raw.close();
+                    raw = null;
+                    failure = new IllegalStateException("new connection failed validation");
+                } else {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            if (!validate || attempt == OPEN_ATTEMPTS) {
+                size.decrementAndGet();
+                throw failure;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100L << attempt));
+        }
+        PooledConnection c = new PooledConnection(raw);
+        add(c);
+        created.increment();
+        return c;
+    }
+
+    private Connection checkedOut(PooledConnection c) {
+        if (leakThresholdNanos > 0) {
+            c.borrowedAt = System.nanoTime();
+            c.leakReported = false;
+            c.borrowSite = new Throwable("borrowed by " + Thread.currentThread().getName());
+        }
+        Lease lease = new Lease(c);
+        c.lease = lease;
+        return lease;
+    }
+
+    private void release(PooledConnection c) {
+        if (c.state.get() != IN_USE)
+            throw new IllegalStateException(c + " was already returned to the pool");
+        c.borrowSite = null;
+        c.lease = null;
+        if (!c.autoCommit) {
+            // don't hand an open transaction to the next borrower
+            try {
+                c.delegate.rollback();
+                c.delegate.setAutoCommit(true);
+            } catch (RuntimeException e) {
+                System.err.printf("failed to reset %s: %s%n", c.delegate, e);
+            }
+            c.autoCommit = true;
+        }
+        lastUsed.set(c);
+        makeAvailable(c);
+    }
+
+    // c is IN_USE and owned by the caller
+    private void makeAvailable(PooledConnection c) {
+        if (closed) {
+            if (c.state.compareAndSet(IN_USE, REMOVED)) {
+                destroy(c);
+            }
+            return;
+        }
+        // queued borrowers get it directly, still IN_USE, in arrival order
+        if (handOff(c)) {
+            return;
+        }
+        for (;;) {
+            c.state.set(IDLE);
+            // a borrower that queued after handOff looked may already have scanned
+            // past this connection; it is counted in waiting before it scans
+            if (waiting.get() == 0 || !c.state.compareAndSet(IDLE, IN_USE)) {
+                return;
+            }
+            if (handOff(c)) {
+                return;
+            }
+            Thread.yield();
+        }
+    }
+
+    private boolean handOff(PooledConnection c) {
+        Waiter w;
+        while ((w = queue.poll()) != null) {
+            if (w.slot.compareAndSet(null, c)) {
+                LockSupport.unpark(w.thread);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void destroy(PooledConnection c) {
+        remove(c);
+        size.decrementAndGet();
+        try {
+            c.delegate.close();
+        } catch (RuntimeException e) {
+            System.err.printf("failed to close %s: %s%n", c.delegate, e);
+        }
+    }
+
+    private synchronized void add(PooledConnection c) {
+        PooledConnection[] s = Arrays.copyOf(slots, slots.length + 1);
+        s[s.length - 1] = c;
+        slots = s;
+    }
+
+    private synchronized void remove(PooledConnection c) {
+        PooledConnection[] s = slots;
+        for (int i = 0; i < s.length; i++) {
+            if (s[i] == c) {
+                PooledConnection[] next = new PooledConnection[s.length - 1];
+                System.arraycopy(s, 0, next, 0, i);
+                System.arraycopy(s, i + 1, next, i, s.length - i - 1);
+                slots = next;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Health check, run on the housekeeper thread. Each idle connection is
+     * taken out of circulation for the probe, so borrowers skip it rather than
+     * wait; broken ones are closed, and the pool is topped back up to minSize.
+     * Connections in use are checked on a later run.
+     */
+    private void probe() {
+        for (PooledConnection c : slots) {
+            if (closed || !c.state.compareAndSet(IDLE, IN_USE)) {
+                continue;
+            }
+            probes.increment();
+            boolean healthy;
+            try {
+                healthy = c.delegate.isValid();
+            } catch (RuntimeException e) {
+                healthy = false;
+            }
+            if (healthy) {
+                makeAvailable(c);
+            } else {
+                c.state.set(REMOVED);
+                destroy(c);
+                evicted.increment();
+                System.err.printf("evicted broken connection %s%n", c.delegate);
+            }
+        }
+        while (!closed) {
+            try {
+                PooledConnection c = open(minSize, true);
+                if (c == null) {
+                    break;
+                }
+                makeAvailable(c);
+            } catch (RuntimeException e) {
+                System.err.printf("could not replace connection: %s%n", e);
+                break;
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.nanoTime();
+        for (PooledConnection c : slots) {
+            Throwable site = c.borrowSite;
+            if (c.state.get() == IN_USE && !c.leakReported && site != null
+                    && now - c.borrowedAt > leakThresholdNanos) {
+                c.leakReported = true;
+                leaks.increment();
+                System.err.printf("possible connection leak: %s held for %d ms%n",
+                        c.delegate, TimeUnit.NANOSECONDS.toMillis(now - c.borrowedAt));
+                site.printStackTrace();
+            }
+        }
+    }
+
+    private void recordWait(long start) {
+        long waited = System.nanoTime() - start;
+        waits.increment();
+        waitNanos.add(waited);
+        long max;
+        while (waited > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waited)) {
+            // retry
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        Waiter w;
+        while ((w = queue.poll()) != null) {
+            if (w.slot.compareAndSet(null, CANCELLED)) {
+                LockSupport.unpark(w.thread);
+            }
+        }
+        // connections still in use are closed when they are returned
+        for (PooledConnection c : slots) {
+            if (c.state.compareAndSet(IDLE, REMOVED)) {
+                destroy(c);
+            }
+        }
+    }
+
+    public int minSize() {
+        return minSize;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public int total() {
+        return size.get();
+    }
+
+    public int active() {
+        return count(IN_USE);
+    }
+
+    public int idle() {
+        return count(IDLE);
+    }
+
+    private int count(int state) {
+        int n = 0;
+        for (PooledConnection c : slots) {
+            if (c.state.get() == state) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public int waiting() {
+        return waiting.get();
+    }
+
+    public long borrowCount() {
+        return borrows.sum();
+    }
+
+    // borrows that could not be served from the fast path
+    public long waitCount() {
+        return waits.sum();
+    }
+
+    public double averageWaitMicros() {
+        long n = waits.sum();
+        return n == 0 ? 0 : waitNanos.sum() / 1_000.0 / n;
+    }
+
+    public double maxWaitMicros() {
+        return maxWaitNanos.get() / 1_000.0;
+    }
+
+    public long timeouts() {
+        return timeouts.sum();
+    }
+
+    public long leaksDetected() {
+        return leaks.sum();
+    }
+
+    public long createdCount() {
+        return created.sum();
+    }
+
+    public long probeCount() {
+        return probes.sum();
+    }
+
+    // connections closed because a health probe found them broken
+    public long evictedCount() {
+        return evicted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pool[total %d, active %d, idle %d, waiting %d, borrows %d, waits %d, avg wait %.1f us, "
+                        + "max wait %.1f us, timeouts %d, leaks %d, evicted %d]",
+                total(), active(), idle(), waiting(), borrowCount(), waitCount(), averageWaitMicros(),
+                maxWaitMicros(), timeouts(), leaksDetected(), evictedCount());
+    }
+
+    private static final class Waiter {
+        final Thread thread = Thread.currentThread();
+        // null while waiting, then the connection handed over or CANCELLED
+        final AtomicReference<Object> slot = new AtomicReference<>();
+    }
+
+    /**
+     * A pooled connection. Callers never see it directly: each borrow wraps it
+     * in a fresh Lease, and lease names the one currently allowed to use it.
+     */
+    private static final class PooledConnection {
+        final Connection delegate;
+        final AtomicInteger state = new AtomicInteger(IN_USE);
+        volatile Lease lease;
+        volatile long borrowedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+        boolean autoCommit = true;
+
+        PooledConnection(Connection delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String toString() {
+            return "pooled " + delegate;
+        }
+    }
+
+    /**
+     * The handle callers get from borrow(). close() returns the connection to
+     * the pool instead of closing it; after that the handle is dead.
+     */
+    private final class Lease implements Connection {
+        private final PooledConnection c;
+        private boolean returned;
+
+        Lease(PooledConnection c) {
+            this.c = c;
+        }
+
+        @Override
+        public List<Object[]> query(String sql, Object... params) {
+            checkBorrowed();
+            return c.delegate.query(sql, params);
+        }
+
+        @Override
+        public int update(String sql, Object... params) {
+            checkBorrowed();
+            return c.delegate.update(sql, params);
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) {
+            checkBorrowed();
+            c.delegate.setAutoCommit(autoCommit);
+            c.autoCommit = autoCommit;
+        }
+
+        @Override
+        public void commit() {
+            checkBorrowed();
+            c.delegate.commit();
+        }
+
+        @Override
+        public void rollback() {
+            checkBorrowed();
+            c.delegate.rollback();
+        }
+
+        @Override
+        public boolean isValid() {
+            return !returned && c.lease == this && c.delegate.isValid();
+        }
+
+        private void checkBorrowed() {
+            if (returned || c.lease != this)
+                throw new IllegalStateException(c.delegate + " used after it was returned to the pool");
+        }
+
+        // a second close is a no-op
+        @Override
+        public void close() {
+            if (returned) {
+                return;
+            }
+            returned = true;
+            release(c);
+        }
+
+        @Override
+        public String toString() {
+            return c.toString();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention benchmark for ConnectionPool against FakeConnection. For each
+ * thread count every thread loops borrow, one statement, return; the same
+ * loop over one shared synchronized connection (what the old singleton
+ * amounted to) is run as the baseline.
+ *
+ * Usage:
+ *   java ConnectionPoolBenchmark [--threads 1,2,4,8,16,32,64,128,256]
+ *       [--max 16] [--latency-us 20] [--millis 1000]
+ */
+public class ConnectionPoolBenchmark {
+    private int[] threadCounts = { 1, 2, 4, 8, 16, 32, 64, 128, 256 };
+    private int maxSize = 16;
+    private long latencyNanos = TimeUnit.MICROSECONDS.toNanos(20);
+    private long millis = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        ConnectionPoolBenchmark bench = new ConnectionPoolBenchmark();
+        bench.parse(args);
+        bench.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--threads":
+                    String[] parts = value.split(",");
+                    threadCounts = new int[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        threadCounts[p] = Integer.parseInt(parts[p].trim());
+                    }
+                    break;
+                case "--max":
+                    maxSize = Integer.parseInt(value);
+                    break;
+                case "--latency-us":
+                    latencyNanos = TimeUnit.MICROSECONDS.toNanos(Long.parseLong(value));
+                    break;
+                case "--millis":
+                    millis = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+            i++;
+        }
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf("pool max %d, statement latency %d us, %d ms per run%n",
+                maxSize, TimeUnit.NANOSECONDS.toMicros(latencyNanos), millis);
+        System.out.printf("%8s %16s %16s %14s %14s %9s%n",
+                "threads", "single ops/s", "pool ops/s", "avg wait us", "max wait us", "timeouts");
+        for (int threads : threadCounts) {
+            Connection single = new FakeConnection(latencyNanos);
+            double baseline = measure(threads, () -> {
+                synchronized (single) {
+                    single.query("SELECT 1");
+                }
+            });
+
+            try (ConnectionPool pool = new ConnectionPool(() -> new FakeConnection(latencyNanos), maxSize, maxSize)) {
+                double pooled = measure(threads, () -> {
+                    try (Connection c = pool.borrow()) {
+                        c.query("SELECT 1");
+                    }
+                });
+                System.out.printf(Locale.ROOT, "%8d %,16.0f %,16.0f %14.1f %14.1f %9d%n",
+                        threads, baseline, pooled, pool.averageWaitMicros(), pool.maxWaitMicros(), pool.timeouts());
+            }
+        }
+    }
+
+    private double measure(int threads, Runnable op) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] stopAt = new long[1];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long n = 0;
+                while (System.nanoTime() < stopAt[0]) {
+                    op.run();
+                    n++;
+                }
+                ops.add(n);
+            }, "bench-" + i);
+            workers[i].start();
+        }
+        long begin = System.nanoTime();
+        stopAt[0] = begin + TimeUnit.MILLISECONDS.toNanos(millis);
+        start.countDown();
+        for (Thread t : workers) {
+            t.join();
+        }
+        return ops.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+}
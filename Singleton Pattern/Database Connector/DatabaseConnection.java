@@ -1,14 +1,68 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Entry point to the database. The instance is still a singleton, but it no
+ * longer is the connection: it owns a ConnectionPool, and connect() borrows
+ * one connection for the caller, who returns it with close(). Threads no
+ * longer serialize on a single connection.
+ *
+ * query() and update() borrow and return a connection themselves; query()
+ * reads through a QueryCache, and update() invalidates the cached results
+ * of the tables it writes. Connections from connect() do the same once
+ * their writes commit. submit() queues a write for group commit and
+ * returns a future that completes once the batch holding it commits.
+ *
+ * Call warmUp() while the application boots: it creates the instance and
+ * opens its connections in parallel in the background, so the first request
+ * does not pay the connect cost. Idle connections are health-checked every
+ * few seconds and broken ones replaced off the request path.
+ *
+ * With -Ddb.embedded=<dir> the connections go to an embedded StorageEngine
+ * persisting to that directory instead of the in-process fake.
+ */
 public class DatabaseConnection {
     private static volatile DatabaseConnection instance;
+    // stand-in for the cost of a real driver connect
+    private static final long CONNECT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final StorageEngine engine;
+    private final ConnectionPool pool;
+    private final QueryCache cache = new QueryCache(10_000, 30_000);
+    private final GroupCommitWriter writer;
 
     private DatabaseConnection() {
         System.out.println("Creating new DatabaseConnection instance...");
+        String embedded = System.getProperty("db.embedded");
+        ConnectionFactory factory;
+        if (embedded != null) {
+            try {
+                engine = new StorageEngine(Paths.get(embedded), 60_000);
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot open embedded store in " + embedded, e);
+            }
+            factory = engine::connect;
+        } else {
+            engine = null;
+            factory = () -> {
+                LockSupport.parkNanos(CONNECT_NANOS);
+                return new FakeConnection();
+            };
+        }
+        pool = new ConnectionPool(factory, 4, 16, 30_000, 0, 5_000, true);
+        writer = new GroupCommitWriter(pool, 256, 200, 64 * 1024, cache::invalidate);
     }
 
     public static DatabaseConnection getInstance() {
-        if (instance == null) { 
+        if (instance == null) {
             synchronized (DatabaseConnection.class) {
-                if (instance == null) { 
+                if (instance == null) {
                     instance = new DatabaseConnection();
                 }
             }
@@ -16,21 +70,250 @@ public class DatabaseConnection {
         return instance;
     }
 
-    public void connect() {
-        System.out.println("Connected to the database!");
+    // completes when the pool's first connections are open and validated
+    public static CompletableFuture<DatabaseConnection> warmUp() {
+        DatabaseConnection db = getInstance();
+        return db.pool.warmedUp().thenApply(v -> db);
+    }
+
+    // borrow a connection; use try-with-resources to give it back
+    public Connection connect() {
+        return new Invalidating(pool.borrow(), cache);
+    }
+
+    public List<Object[]> query(String sql, Object... params) {
+        return cache.get(sql, params, () -> {
+            try (Connection c = pool.borrow()) {
+                return c.query(sql, params);
+            }
+        });
+    }
+
+    public int update(String sql, Object... params) {
+        try (Connection c = pool.borrow()) {
+            return c.update(sql, params);
+        } finally {
+            cache.invalidate(sql);
+        }
+    }
+
+    public CompletableFuture<Integer> submit(String sql, Object... params) {
+        return writer.submit(sql, params);
+    }
+
+    public QueryCache cache() {
+        return cache;
+    }
+
+    public ConnectionPool pool() {
+        return pool;
+    }
+
+    public GroupCommitWriter writer() {
+        return writer;
     }
 
+    // the next getInstance() opens a fresh instance instead of returning this closed one
     public void disconnect() {
+        synchronized (DatabaseConnection.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        writer.close();
+        pool.close();
+        if (engine != null) {
+            engine.close();
+        }
         System.out.println("Disconnected from the database!");
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // at boot: connections open in the background while the rest of startup runs
+        long boot = System.nanoTime();
+        CompletableFuture<DatabaseConnection> ready = DatabaseConnection.warmUp();
+        System.out.printf("warm-up started after %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - boot));
+        ready.join();
+        System.out.printf("%d connections ready after %d ms%n",
+                ready.join().pool().idle(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - boot));
+
         DatabaseConnection db1 = DatabaseConnection.getInstance();
         DatabaseConnection db2 = DatabaseConnection.getInstance();
 
-        db1.connect();
-        db2.disconnect();
-
         System.out.println("Are both instances same? " + (db1 == db2));
+
+        // statements kept to what both the fake and the embedded engine accept
+        Thread[] workers = new Thread[8];
+        try (Connection c = db1.connect()) {
+            for (int i = 0; i < workers.length; i++) {
+                c.update("INSERT INTO jobs (id, done) VALUES (?, ?)", i, 0);
+            }
+            System.out.println("Connected to the database! " + c.query("SELECT * FROM jobs WHERE id = ?", 0).size() + " row");
+        }
+
+        for (int i = 0; i < workers.length; i++) {
+            int job = i;
+            workers[i] = new Thread(() -> {
+                for (int n = 1; n <= 1_000; n++) {
+                    try (Connection c = db2.connect()) {
+                        c.update("UPDATE jobs SET done = ? WHERE id = ?", n, job);
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        System.out.println(db1.pool());
+
+        // hot reads come from the cache; a write to the table drops its cached results
+        for (int i = 0; i < 10; i++) {
+            db1.update("INSERT INTO users (id, name) VALUES (?, ?)", i, "user-" + i);
+        }
+        for (int n = 0; n < 10_000; n++) {
+            db1.query("SELECT name FROM users WHERE id = ?", n % 10);
+        }
+        db1.update("UPDATE users SET name = ? WHERE id = ?", "ada", 3);
+        db1.query("select name  from users where id = ?", 3);
+        System.out.println(db1.cache());
+
+        // group commit: with a 1 ms serialized commit, writes one at a time cap at ~1000/s
+        try (ConnectionPool slow = new ConnectionPool(() -> new FakeConnection(20_000, 1_000_000), 16, 16);
+             GroupCommitWriter grouped = new GroupCommitWriter(slow, 256, 200)) {
+            long start = System.nanoTime();
+            runWriters(16, 25, () -> {
+                try (Connection c = slow.borrow()) {
+                    c.update("INSERT INTO events VALUES (?)", 1);
+                }
+            });
+            double oneByOne = 400 / ((System.nanoTime() - start) / 1e9);
+            start = System.nanoTime();
+            runWriters(16, 25, () -> grouped.submit("INSERT INTO events VALUES (?)", 1).join());
+            double batched = 400 / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("writes/s one by one %.0f, group commit %.0f (%s)%n", oneByOne, batched, grouped);
+        }
+
+        // health checks: a connection the server dropped is evicted and replaced in the background
+        List<FakeConnection> opened = new CopyOnWriteArrayList<>();
+        try (ConnectionPool pool = new ConnectionPool(() -> {
+            FakeConnection c = new FakeConnection();
+            opened.add(c);
+            return c;
+        }, 2, 4, 1_000, 0, 50, false)) {
+            opened.get(0).breakConnection();
+            Thread.sleep(150);
+            System.out.println("after probes: " + pool);
+        }
+
+        // leak detection: a connection held past the threshold is reported with its borrow site
+        try (ConnectionPool pool = new ConnectionPool(FakeConnection::new, 0, 2, 1_000, 50)) {
+            Connection leaked = pool.borrow();
+            Thread.sleep(150);
+            System.out.println("leaks detected: " + pool.leaksDetected());
+            leaked.close();
+        }
+
+        db1.disconnect();
+        System.out.println("Fresh instance after disconnect? " + (DatabaseConnection.getInstance() != db1));
+        DatabaseConnection.getInstance().disconnect();
+    }
+
+    private static void runWriters(int threads, int writesEach, Runnable write) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                for (int n = 0; n < writesEach; n++) {
+                    write.run();
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+    }
+
+    /**
+     * A borrowed connection that invalidates the cache for what it writes:
+     * after each update with auto-commit on, or on commit() for the updates
+     * of the transaction.
+     */
+    private static final class Invalidating implements Connection {
+        private final Connection delegate;
+        private final QueryCache cache;
+        // updates of the open transaction, invalidated when it commits
+        private final List<String> written = new ArrayList<>();
+        private boolean autoCommit = true;
+
+        Invalidating(Connection delegate, QueryCache cache) {
+            this.delegate = delegate;
+            this.cache = cache;
+        }
+
+        @Override
+        public List<Object[]> query(String sql, Object... params) {
+            return delegate.query(sql, params);
+        }
+
+        @Override
+        public int update(String sql, Object... params) {
+            if (!autoCommit) {
+                written.add(sql);
+                return delegate.update(sql, params);
+            }
+            try {
+                return delegate.update(sql, params);
+            } finally {
+                cache.invalidate(sql);
+            }
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) {
+            delegate.setAutoCommit(autoCommit);
+            // switching auto-commit back on commits the open transaction
+            if (autoCommit && !this.autoCommit) {
+                invalidateWritten();
+            }
+            this.autoCommit = autoCommit;
+        }
+
+        @Override
+        public void commit() {
+            try {
+                delegate.commit();
+            } finally {
+                invalidateWritten();
+            }
+        }
+
+        @Override
+        public void rollback() {
+            delegate.rollback();
+            written.clear();
+        }
+
+        private void invalidateWritten() {
+            for (String sql : written) {
+                cache.invalidate(sql);
+            }
+            written.clear();
+        }
+
+        @Override
+        public boolean isValid() {
+            return delegate.isValid();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
     }
 }
@@ -0,0 +1,104 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process stand-in for a real connection. Every statement costs a fixed
+ * latency and nothing is stored, so pool contention can be measured without
+ * a database. Commits cost their own latency and are serialized across all
+ * fake connections, like a server flushing one log.
+ */
+class FakeConnection implements Connection {
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final Object COMMIT_LOG = new Object();
+
+    private final long id = IDS.incrementAndGet();
+    private final long latencyNanos;
+    private final long commitLatencyNanos;
+    private boolean autoCommit = true;
+    private volatile boolean closed;
+    private volatile boolean broken;
+
+    FakeConnection() {
+        this(0);
+    }
+
+    FakeConnection(long latencyNanos) {
+        this(latencyNanos, 0);
+    }
+
+    FakeConnection(long latencyNanos, long commitLatencyNanos) {
+        this.latencyNanos = latencyNanos;
+        this.commitLatencyNanos = commitLatencyNanos;
+    }
+
+    @Override
+    public List<Object[]> query(String sql, Object... params) {
+        roundTrip();
+        return Collections.singletonList(new Object[] { id, sql });
+    }
+
+    @Override
+    public int update(String sql, Object... params) {
+        roundTrip();
+        if (autoCommit) {
+            flushLog();
+        }
+        return 1;
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) {
+        this.autoCommit = autoCommit;
+    }
+
+    @Override
+    public void commit() {
+        roundTrip();
+        flushLog();
+    }
+
+    @Override
+    public void rollback() {
+        roundTrip();
+    }
+
+    private void flushLog() {
+        if (commitLatencyNanos > 0) {
+            synchronized (COMMIT_LOG) {
+                LockSupport.parkNanos(commitLatencyNanos);
+            }
+        }
+    }
+
+    private void roundTrip() {
+        if (closed)
+            throw new IllegalStateException("connection " + id + " is closed");
+        if (broken)
+            throw new IllegalStateException("connection " + id + " is broken");
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    // simulate the server dropping this connection
+    void breakConnection() {
+        broken = true;
+    }
+
+    @Override
+    public boolean isValid() {
+        return !closed && !broken;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public String toString() {
+        return "FakeConnection-" + id;
+    }
+}
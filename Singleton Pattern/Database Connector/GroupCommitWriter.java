@@ -0,0 +1,232 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Group commit for writes. Callers submit statements and get a future; one
+ * flusher thread takes whatever has queued, up to maxBatch, runs it as a
+ * single transaction and completes every future after the one commit.
+ *
+ * A batch closes when it is full or when its oldest write has waited
+ * maxDelay. With maxDelay 0 the flusher never waits: batches are simply
+ * whatever queued while the previous commit was in flight.
+ *
+ * If any statement in a batch fails, the transaction is rolled back and each
+ * write is retried in a transaction of its own, so one bad statement fails
+ * only its own future. Futures are completed on the flusher thread; attach
+ * slow callbacks with the *Async variants.
+ */
+class GroupCommitWriter implements AutoCloseable {
+    private static final Write STOP = new Write(null, null);
+
+    private final ConnectionPool pool;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final Consumer<String> onCommitted;
+    private final BlockingQueue<Write> queue;
+    private final Thread flusher;
+    private volatile boolean closed;
+    // set by the flusher just before its last sweep of the queue
+    private volatile boolean draining;
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    GroupCommitWriter(ConnectionPool pool, int maxBatch, long maxDelayMicros) {
+        this(pool, maxBatch, maxDelayMicros, 64 * 1024, sql -> { });
+    }
+
+    /**
+     * @param capacity    writes that may queue before submit() blocks
+     * @param onCommitted called with each statement once it has committed
+     */
+    GroupCommitWriter(ConnectionPool pool, int maxBatch, long maxDelayMicros, int capacity, Consumer<String> onCommitted) {
+        if (maxBatch < 1 || maxDelayMicros < 0 || capacity < 1)
+            throw new IllegalArgumentException("need maxBatch >= 1, maxDelayMicros >= 0, capacity >= 1");
+        this.pool = pool;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.onCommitted = onCommitted;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.flusher = new Thread(this::run, "group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public CompletableFuture<Integer> submit(String sql, Object... params) {
+        if (closed)
+            throw new IllegalStateException("writer is closed");
+        Write w = new Write(sql, params);
+        try {
+            queue.put(w);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while queueing a write", e);
+        }
+        // raced with close() and queued after the flusher's last sweep
+        if (draining && queue.remove(w))
+            throw new IllegalStateException("writer is closed");
+        return w.result;
+    }
+
+    private void run() {
+        List<Write> batch = new ArrayList<>(maxBatch);
+        boolean stopping = false;
+        boolean interrupted = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+                long deadline = batch.get(0).queuedAt + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    if (batch.size() >= maxBatch) {
+                        break;
+                    }
+                    long left = deadline - System.nanoTime();
+                    Write next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+                interrupted = true;
+            }
+            stopping |= batch.remove(STOP);
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        // writes that raced with close() still run, unless close() gave up waiting
+        draining = true;
+        Write w;
+        while ((w = queue.poll()) != null) {
+            if (w == STOP) {
+                continue;
+            }
+            if (interrupted) {
+                w.result.completeExceptionally(new IllegalStateException("writer closed before the write ran"));
+                continue;
+            }
+            batch.add(w);
+            if (batch.size() == maxBatch) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private void flush(List<Write> batch) {
+        batches.increment();
+        writes.add(batch.size());
+        int[] counts = new int[batch.size()];
+        try (Connection c = pool.borrow()) {
+            if (batch.size() == 1 || !runBatch(c, batch, counts)) {
+                // run alone: each write is its own transaction
+                for (Write w : batch) {
+                    try {
+                        int n = c.update(w.sql, w.params);
+                        onCommitted.accept(w.sql);
+                        w.result.complete(n);
+                    } catch (RuntimeException e) {
+                        failures.increment();
+                        w.result.completeExceptionally(e);
+                    }
+                }
+                return;
+            }
+        } catch (RuntimeException e) {
+            // no connection, or the commit itself failed: the batch's outcome is unknown
+            failures.add(batch.size());
+            for (Write w : batch) {
+                w.result.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            onCommitted.accept(batch.get(i).sql);
+            batch.get(i).result.complete(counts[i]);
+        }
+    }
+
+    // false if a statement failed and the transaction was rolled back
+    private boolean runBatch(Connection c, List<Write> batch, int[] counts) {
+        c.setAutoCommit(false);
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                counts[i] = c.update(batch.get(i).sql, batch.get(i).params);
+            }
+        } catch (RuntimeException e) {
+            c.rollback();
+            c.setAutoCommit(true);
+            return false;
+        }
+        c.commit();
+        c.setAutoCommit(true);
+        return true;
+    }
+
+    /**
+     * Stops accepting writes and waits for the queued ones to commit.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(STOP);
+            flusher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher.interrupt();
+    }
+
+    public long writeCount() {
+        return writes.sum();
+    }
+
+    public long batchCount() {
+        return batches.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    public double averageBatchSize() {
+        long b = batches.sum();
+        return b == 0 ? 0 : (double) writes.sum() / b;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("group-commit[writes %d, batches %d, avg batch %.1f, failures %d]",
+                writeCount(), batchCount(), averageBatchSize(), failureCount());
+    }
+
+    private static final class Write {
+        final String sql;
+        final Object[] params;
+        final long queuedAt = System.nanoTime();
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Write(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+}
@@ -0,0 +1,617 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of query results, keyed by normalized SQL plus
+ * parameters.
+ *
+ * Eviction is W-TinyLFU: new entries go through a small LRU window, and an
+ * entry leaving the window only displaces the main region's LRU victim if a
+ * frequency sketch says it is used more often. The main region is a
+ * segmented LRU (probation, protected). Entries are spread over independently
+ * locked segments. A hit reads the ConcurrentHashMap without locking and
+ * records the access only if its segment lock is free, so hot reads never
+ * queue behind each other.
+ *
+ * Concurrent misses on one key share a single load. A write invalidates every
+ * cached result that reads one of the tables it touches. It also bumps the
+ * table's version, so a load that overlapped the write returns its result
+ * but does not cache it.
+ *
+ * Returned lists are shared between callers and must not be modified.
+ */
+class QueryCache {
+    private static final int MAX_STATEMENTS = 10_000;
+
+    private final long ttlNanos;
+    private final Segment[] segments;
+    private final ConcurrentHashMap<QueryKey, Entry> map = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<QueryKey, CompletableFuture<List<Object[]>>> loading = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<QueryKey>> byTable = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+    // parsed form of each distinct SQL text; bounded, statements past the bound are parsed per call
+    private final ConcurrentHashMap<String, Statement> statements = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    QueryCache(int maximumSize, long ttlMillis) {
+        if (maximumSize < 1)
+            throw new IllegalArgumentException("maximumSize must be >= 1");
+        if (ttlMillis <= 0)
+            throw new IllegalArgumentException("ttlMillis must be > 0");
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        int n = 1;
+        while (n < 16 && maximumSize / (n * 2) >= 64) {
+            n *= 2;
+        }
+        segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment(maximumSize / n + (i < maximumSize % n ? 1 : 0));
+        }
+    }
+
+    public List<Object[]> get(String sql, Object[] params, Supplier<List<Object[]>> loader) {
+        QueryKey key = new QueryKey(statement(sql), params);
+        Entry e = map.get(key);
+        if (e != null) {
+            if (System.nanoTime() - e.expiresAt < 0) {
+                hits.increment();
+                segmentFor(key).recordAccess(e);
+                return e.rows;
+            }
+            expirations.increment();
+            remove(e);
+        }
+        misses.increment();
+        return load(key, loader);
+    }
+
+    private List<Object[]> load(QueryKey key, Supplier<List<Object[]>> loader) {
+        CompletableFuture<List<Object[]>> mine = new CompletableFuture<>();
+        CompletableFuture<List<Object[]>> inflight = loading.putIfAbsent(key, mine);
+        if (inflight != null) {
+            coalesced.increment();
+            try {
+                return inflight.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+            }
+        }
+        try {
+            // another load may have finished between our miss and registering
+            Entry e = map.get(key);
+            if (e != null && System.nanoTime() - e.expiresAt < 0) {
+                mine.complete(e.rows);
+                return e.rows;
+            }
+            String[] tables = key.statement.tables;
+            long[] versions = new long[tables.length];
+            for (int i = 0; i < tables.length; i++) {
+                versions[i] = version(tables[i]).get();
+            }
+            List<Object[]> rows = Collections.unmodifiableList(loader.get());
+            loads.increment();
+            if (unchanged(tables, versions)) {
+                Entry entry = new Entry(key, rows, System.nanoTime() + ttlNanos);
+                segmentFor(key).insert(entry);
+                // a write may have bumped the version after the check but scanned byTable
+                // before the insert; invalidateTable bumps first, so one of us sees the other
+                if (!unchanged(tables, versions) && remove(entry)) {
+                    invalidations.increment();
+                }
+            }
+            mine.complete(rows);
+            return rows;
+        } catch (RuntimeException ex) {
+            loadFailures.increment();
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private boolean unchanged(String[] tables, long[] versions) {
+        for (int i = 0; i < tables.length; i++) {
+            if (version(tables[i]).get() != versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // invalidate everything read from the tables a write statement touches,
+    // or everything if they cannot be told from the SQL
+    public void invalidate(String writeSql) {
+        String[] tables = statement(writeSql).tables;
+        if (tables.length == 0) {
+            invalidateAll();
+            return;
+        }
+        for (String table : tables) {
+            invalidateTable(table);
+        }
+    }
+
+    public void invalidateTable(String table) {
+        String t = table.toLowerCase(Locale.ROOT);
+        version(t).incrementAndGet();
+        // loads already running for this table must not be joined by new readers
+        loading.keySet().removeIf(k -> k.statement.reads(t));
+        Set<QueryKey> keys = byTable.get(t);
+        if (keys != null) {
+            for (QueryKey k : keys) {
+                Entry e = map.get(k);
+                if (e != null && remove(e)) {
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        for (AtomicLong v : tableVersions.values()) {
+            v.incrementAndGet();
+        }
+        loading.clear();
+        for (Entry e : map.values()) {
+            if (remove(e)) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    private boolean remove(Entry e) {
+        return segmentFor(e.key).remove(e);
+    }
+
+    private AtomicLong version(String table) {
+        return tableVersions.computeIfAbsent(table, t -> new AtomicLong());
+    }
+
+    private Segment segmentFor(QueryKey key) {
+        return segments[(key.hash ^ (key.hash >>> 16)) & (segments.length - 1)];
+    }
+
+    private Statement statement(String sql) {
+        Statement s = statements.get(sql);
+        if (s == null) {
+            s = Statement.parse(sql);
+            if (statements.size() < MAX_STATEMENTS) {
+                statements.putIfAbsent(sql, s);
+            }
+        }
+        return s;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    // misses that waited for another caller's load instead of querying
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long loadCount() {
+        return loads.sum();
+    }
+
+    public long loadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public long expirationCount() {
+        return expirations.sum();
+    }
+
+    public long invalidationCount() {
+        return invalidations.sum();
+    }
+
+    public double hitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "cache[size %d, hits %d, misses %d, hit rate %.3f, coalesced %d, loads %d, "
+                        + "load failures %d, evictions %d, expirations %d, invalidations %d]",
+                size(), hitCount(), missCount(), hitRate(), coalescedCount(), loadCount(), loadFailureCount(),
+                evictionCount(), expirationCount(), invalidationCount());
+    }
+
+    /**
+     * SQL text normalized for use as a cache key (whitespace collapsed,
+     * lower case outside string literals) and the tables it reads or writes.
+     * Tables are the identifiers after FROM, JOIN, UPDATE, INTO, TRUNCATE
+     * and TABLE, including every entry of a comma-separated FROM list.
+     */
+    static final class Statement {
+        final String normalized;
+        final String[] tables;
+
+        private Statement(String normalized, String[] tables) {
+            this.normalized = normalized;
+            this.tables = tables;
+        }
+
+        boolean reads(String table) {
+            for (String t : tables) {
+                if (t.equals(table)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static Statement parse(String sql) {
+            StringBuilder out = new StringBuilder(sql.length());
+            boolean quoted = false;
+            boolean space = false;
+            for (int i = 0; i < sql.length(); i++) {
+                char ch = sql.charAt(i);
+                if (ch == '\'') {
+                    quoted = !quoted;
+                }
+                if (!quoted && Character.isWhitespace(ch)) {
+                    space = out.length() > 0;
+                    continue;
+                }
+                if (space) {
+                    out.append(' ');
+                    space = false;
+                }
+                out.append(quoted ? ch : Character.toLowerCase(ch));
+            }
+            String normalized = out.toString();
+
+            List<String> tables = new ArrayList<>(2);
+            String[] tokens = normalized.replace(",", " , ").replace("(", " ( ").replace(")", " ) ").trim().split(" +");
+            for (int i = 0; i < tokens.length - 1; i++) {
+                String kw = tokens[i];
+                if (kw.equals("from") || kw.equals("join") || kw.equals("update") || kw.equals("into")
+                        || kw.equals("table") || (kw.equals("truncate") && !tokens[i + 1].equals("table"))) {
+                    // FROM a, b x, c AS y lists several, each with an optional alias
+                    int j = i + 1;
+                    if (kw.equals("table")) {
+                        // DROP TABLE IF EXISTS t, CREATE TABLE IF NOT EXISTS t
+                        while (j < tokens.length && (tokens[j].equals("if") || tokens[j].equals("not")
+                                || tokens[j].equals("exists"))) {
+                            j++;
+                        }
+                    }
+                    while (j < tokens.length && isName(tokens[j])) {
+                        String name = tokens[j++];
+                        if (!tables.contains(name)) {
+                            tables.add(name);
+                        }
+                        if (j < tokens.length && tokens[j].equals("as")) {
+                            j++;
+                        }
+                        if (j < tokens.length && isName(tokens[j])) {
+                            j++;
+                        }
+                        if (j >= tokens.length || !tokens[j].equals(",")) {
+                            break;
+                        }
+                        j++;
+                    }
+                }
+            }
+            return new Statement(normalized, tables.toArray(new String[0]));
+        }
+
+        private static boolean isName(String token) {
+            return !token.equals(",") && !token.equals("(") && !token.equals(")") && !KEYWORDS.contains(token);
+        }
+
+        // words that can follow a table name, so are never taken for it or its alias
+        private static final Set<String> KEYWORDS = Set.of("where", "join", "inner", "left", "right", "full",
+                "outer", "cross", "natural", "on", "using", "set", "values", "select", "group", "order", "having",
+                "limit", "offset", "union", "for", "default");
+    }
+
+    static final class QueryKey {
+        final Statement statement;
+        final Object[] params;
+        final int hash;
+
+        QueryKey(Statement statement, Object[] params) {
+            this.statement = statement;
+            this.params = params == null ? new Object[0] : params.clone();
+            this.hash = 31 * statement.normalized.hashCode() + Arrays.deepHashCode(this.params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey k = (QueryKey) o;
+            return hash == k.hash && statement.normalized.equals(k.statement.normalized)
+                    && Arrays.deepEquals(params, k.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final byte NONE = 0;
+    private static final byte WINDOW = 1;
+    private static final byte PROBATION = 2;
+    private static final byte PROTECTED = 3;
+
+    static final class Entry {
+        final QueryKey key;
+        final List<Object[]> rows;
+        final long expiresAt;
+        // guarded by the segment lock
+        Entry prev, next;
+        byte queue = NONE;
+
+        Entry(QueryKey key, List<Object[]> rows, long expiresAt) {
+            this.key = key;
+            this.rows = rows;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** Doubly linked access order, least recent first. */
+    private static final class AccessOrder {
+        final Entry head = new Entry(null, null, 0);
+        int size;
+
+        AccessOrder() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        Entry first() {
+            return head.next == head ? null : head.next;
+        }
+
+        void addLast(Entry e) {
+            e.prev = head.prev;
+            e.next = head;
+            head.prev.next = e;
+            head.prev = e;
+            size++;
+        }
+
+        void remove(Entry e) {
+            e.prev.next = e.next;
+            e.next.prev = e.prev;
+            e.prev = null;
+            e.next = null;
+            size--;
+        }
+
+        void moveToLast(Entry e) {
+            remove(e);
+            addLast(e);
+        }
+    }
+
+    /** One W-TinyLFU instance over a share of the capacity. */
+    private final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final int windowCapacity;
+        final int mainCapacity;
+        final int protectedCapacity;
+        final AccessOrder window = new AccessOrder();
+        final AccessOrder probation = new AccessOrder();
+        final AccessOrder protectedQ = new AccessOrder();
+        final FrequencySketch sketch;
+
+        Segment(int capacity) {
+            windowCapacity = Math.max(1, capacity / 100);
+            mainCapacity = Math.max(0, capacity - windowCapacity);
+            protectedCapacity = mainCapacity * 4 / 5;
+            sketch = new FrequencySketch(capacity);
+        }
+
+        // lossy: skipped when another thread holds the lock
+        void recordAccess(Entry e) {
+            if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                sketch.increment(e.key.hash);
+                switch (e.queue) {
+                    case WINDOW:
+                        window.moveToLast(e);
+                        break;
+                    case PROBATION:
+                        probation.remove(e);
+                        e.queue = PROTECTED;
+                        protectedQ.addLast(e);
+                        if (protectedQ.size > protectedCapacity) {
+                            Entry demoted = protectedQ.first();
+                            protectedQ.remove(demoted);
+                            demoted.queue = PROBATION;
+                            probation.addLast(demoted);
+                        }
+                        break;
+                    case PROTECTED:
+                        protectedQ.moveToLast(e);
+                        break;
+                    default:
+                        // already removed
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void insert(Entry e) {
+            lock.lock();
+            try {
+                Entry old = map.put(e.key, e);
+                if (old != null) {
+                    unlink(old);
+                }
+                for (String t : e.key.statement.tables) {
+                    byTable.computeIfAbsent(t, x -> ConcurrentHashMap.newKeySet()).add(e.key);
+                }
+                sketch.increment(e.key.hash);
+                e.queue = WINDOW;
+                window.addLast(e);
+                if (window.size > windowCapacity) {
+                    Entry candidate = window.first();
+                    window.remove(candidate);
+                    candidate.queue = PROBATION;
+                    probation.addLast(candidate);
+                    if (probation.size + protectedQ.size > mainCapacity) {
+                        Entry victim = probation.first();
+                        // admit the candidate only if it is used more often than what it displaces
+                        if (victim != candidate
+                                && sketch.frequency(candidate.key.hash) > sketch.frequency(victim.key.hash)) {
+                            evict(victim);
+                        } else {
+                            evict(candidate);
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean remove(Entry e) {
+            lock.lock();
+            try {
+                if (!map.remove(e.key, e)) {
+                    return false;
+                }
+                unlink(e);
+                unindex(e);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void evict(Entry e) {
+            map.remove(e.key, e);
+            unlink(e);
+            unindex(e);
+            evictions.increment();
+        }
+
+        private void unlink(Entry e) {
+            switch (e.queue) {
+                case WINDOW:
+                    window.remove(e);
+                    break;
+                case PROBATION:
+                    probation.remove(e);
+                    break;
+                case PROTECTED:
+                    protectedQ.remove(e);
+                    break;
+                default:
+            }
+            e.queue = NONE;
+        }
+
+        private void unindex(Entry e) {
+            // the key may already belong to a newer entry
+            if (map.containsKey(e.key)) {
+                return;
+            }
+            for (String t : e.key.statement.tables) {
+                Set<QueryKey> keys = byTable.get(t);
+                if (keys != null) {
+                    keys.remove(e.key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four rows. All counters are halved
+     * after 10 * capacity increments, so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x97cb3127, 0xb9f3b3e5, 0x85ebca6b, 0xc2b2ae35 };
+
+        private final byte[][] rows = new byte[4][];
+        private final int mask;
+        private final int resetAt;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new byte[width];
+            }
+            mask = width - 1;
+            resetAt = 10 * Math.max(16, capacity);
+        }
+
+        void increment(int hash) {
+            for (int i = 0; i < rows.length; i++) {
+                int at = index(hash, i);
+                if (rows[i][at] < 15) {
+                    rows[i][at]++;
+                }
+            }
+            if (++additions >= resetAt) {
+                for (byte[] row : rows) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int min = 15;
+            for (int i = 0; i < rows.length; i++) {
+                min = Math.min(min, rows[i][index(hash, i)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 15)) & mask;
+        }
+    }
+}
@@ -1,10 +1,25 @@
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+enum Level {
+    TRACE, DEBUG, INFO, WARN, ERROR
+}
 
 class Logger {
     public static volatile Logger instance;
 
+    private volatile Level level = Level.INFO;
+    private volatile LogSink sink = new ConsoleSink();
+    private final ThreadLocal<LogRecord> records = ThreadLocal.withInitial(() -> new LogRecord(this));
+
     private Logger() {
         System.out.println("Performing Operation!");
     }
@@ -20,18 +35,414 @@ class Logger {
         return instance;
     }
 
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public boolean isEnabled(Level l) {
+        return l.compareTo(level) >= 0;
+    }
+
+    // Send records to a compact binary file instead of the console; decode it with LogDecoder.
+    // Records racing with the switch land in the new sink once the old one is closed.
+    public void useBinaryFile(Path file) throws IOException {
+        LogSink previous = sink;
+        sink = new BinaryFileSink(file);
+        previous.close();
+    }
+
+    public void useConsole() {
+        LogSink previous = sink;
+        sink = new ConsoleSink();
+        previous.close();
+    }
+
     public void info(String message) {
-        System.out.println("INFO" + message);
+        at(Level.INFO).log(message);
+    }
+
+    public void debug(String message) {
+        at(Level.DEBUG).log(message);
+    }
+
+    public void warn(String message) {
+        at(Level.WARN).log(message);
+    }
+
+    public void error(String message) {
+        at(Level.ERROR).log(message);
+    }
+
+    /**
+     * Start a parameterized record, e.g.
+     * {@code logger.at(Level.DEBUG).arg(id).arg(millis).log("order {} took {} ms")}.
+     * Arguments are kept raw (primitives unboxed) and the "{}" placeholders are
+     * only filled in if the record is rendered. Below the current level this
+     * returns a no-op record, so a disabled call costs a level check.
+     */
+    public LogRecord at(Level l) {
+        if (!isEnabled(l)) {
+            return LogRecord.DISABLED;
+        }
+        LogRecord r = records.get();
+        if (r.writing) {
+            // an argument's toString() is logging from inside this record's write
+            r = new LogRecord(this);
+        } else if (r.inUse) {
+            // begun but not logged: abandoned, or an argument expression is logging
+            // before its record is written; leave it to its holder and replace it
+            r = new LogRecord(this);
+            records.set(r);
+        }
+        r.begin(l);
+        return r;
+    }
+
+    void write(LogRecord r, String template) {
+        long now = System.currentTimeMillis();
+        LogSink s = sink;
+        // false: s was closed after we read it, so sink has already been replaced
+        while (!s.write(r.level, now, template, r)) {
+            s = sink;
+        }
+    }
+
+    public void flush() {
+        sink.flush();
+    }
+}
+
+/**
+ * Arguments of one log call, captured without boxing. Reused per thread.
+ */
+class LogRecord {
+    static final int MAX_ARGS = 8;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+    static final byte OBJECT = 4;
+
+    static final LogRecord DISABLED = new LogRecord(null);
+
+    private final Logger logger;
+    final byte[] tags = new byte[MAX_ARGS];
+    final long[] bits = new long[MAX_ARGS];
+    final Object[] refs = new Object[MAX_ARGS];
+    int count;
+    Level level;
+    // between at() and the end of log()
+    boolean inUse;
+    // inside log(), while the sink reads the arguments
+    boolean writing;
+
+    LogRecord(Logger logger) {
+        this.logger = logger;
+    }
+
+    void begin(Level l) {
+        level = l;
+        count = 0;
+        inUse = true;
+    }
+
+    public LogRecord arg(long value) {
+        return put(LONG, value, null);
+    }
+
+    public LogRecord arg(int value) {
+        return put(LONG, value, null);
+    }
+
+    public LogRecord arg(double value) {
+        return put(DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    public LogRecord arg(boolean value) {
+        return put(BOOLEAN, value ? 1 : 0, null);
+    }
+
+    // kept by reference; rendered with String.valueOf only if the record is written
+    public LogRecord arg(Object value) {
+        return put(OBJECT, 0, value);
+    }
+
+    private LogRecord put(byte tag, long value, Object ref) {
+        // extra arguments beyond MAX_ARGS are ignored
+        if (this != DISABLED && count < MAX_ARGS) {
+            tags[count] = tag;
+            bits[count] = value;
+            refs[count] = ref;
+            count++;
+        }
+        return this;
+    }
+
+    public void log(String template) {
+        if (this == DISABLED) {
+            return;
+        }
+        writing = true;
+        try {
+            logger.write(this, template);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                refs[i] = null;
+            }
+            writing = false;
+            inUse = false;
+        }
+    }
+
+    // only called by a sink that renders text
+    void render(StringBuilder out, String template) {
+        int arg = 0;
+        int from = 0;
+        int at;
+        while (arg < count && (at = template.indexOf("{}", from)) >= 0) {
+            out.append(template, from, at);
+            appendArg(out, arg++);
+            from = at + 2;
+        }
+        out.append(template, from, template.length());
+    }
+
+    private void appendArg(StringBuilder out, int i) {
+        switch (tags[i]) {
+            case LONG:
+                out.append(bits[i]);
+                break;
+            case DOUBLE:
+                out.append(Double.longBitsToDouble(bits[i]));
+                break;
+            case BOOLEAN:
+                out.append(bits[i] != 0);
+                break;
+            default:
+                out.append(refs[i]);
+        }
+    }
+}
+
+interface LogSink {
+    // false if the sink has been closed and the record was not written
+    boolean write(Level level, long timestampMillis, String template, LogRecord args);
+
+    default void flush() {
+    }
+
+    default void close() {
+    }
+}
+
+class ConsoleSink implements LogSink {
+    private final ThreadLocal<StringBuilder> lines = ThreadLocal.withInitial(StringBuilder::new);
+
+    @Override
+    public boolean write(Level level, long timestampMillis, String template, LogRecord args) {
+        StringBuilder line = lines.get();
+        // not empty: an argument's toString() is logging while this thread renders a line
+        if (line.length() > 0) {
+            line = new StringBuilder();
+        }
+        line.append(level).append(' ');
+        try {
+            args.render(line, template);
+            System.out.println(line);
+        } finally {
+            line.setLength(0);
+        }
+        return true;
+    }
+}
+
+/**
+ * Binary log file; templates are stored once and records refer to them by id,
+ * so a record is a few bytes of header plus its raw arguments. Only the first
+ * MAX_TEMPLATES distinct templates get an id; after that, records carry their
+ * template inline, so templates built at runtime cannot grow the table
+ * without bound. Templates longer than MAX_TEMPLATE_BYTES are always inline.
+ *
+ * Records are buffered and drained when the buffer fills, on flush(), on
+ * close(), and by a shutdown hook, so a process that exits without flushing
+ * does not lose its tail. A record too large for the buffer is written
+ * straight to the file.
+ *
+ * Layout (little-endian):
+ *   header:   "BLOG" magic, int version
+ *   template: byte 'T', int id, int length, UTF-8 bytes
+ *   record:   byte 'R', byte level ordinal, long epoch millis, int template id,
+ *             byte arg count, then per argument a tag byte and
+ *             LONG/DOUBLE/BOOLEAN: 8 bytes | OBJECT: int length + UTF-8 of String.valueOf
+ *   inline:   byte 'I', byte level ordinal, long epoch millis, int length + UTF-8 template,
+ *             then arg count and arguments as in 'R'
+ */
+class BinaryFileSink implements LogSink {
+    static final int MAGIC = 0x474F4C42; // "BLOG" read little-endian
+    static final int VERSION = 2;
+    static final byte TEMPLATE = 'T';
+    static final byte RECORD = 'R';
+    static final byte INLINE = 'I';
+    static final int MAX_TEMPLATES = 4096;
+    static final int MAX_TEMPLATE_BYTES = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    // keyed by text: literals hit on identity, and equal templates built at runtime share an id
+    private final Map<String, Integer> templateIds = new HashMap<>();
+    private final Thread flushOnExit = new Thread(this::flush, "binary-log-flush");
+    private boolean closed;
+
+    BinaryFileSink(Path file) throws IOException {
+        boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+        if (!fresh)
+            throw new IOException("binary log already exists: " + file);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        Runtime.getRuntime().addShutdownHook(flushOnExit);
+    }
+
+    @Override
+    public synchronized boolean write(Level level, long timestampMillis, String template, LogRecord args) {
+        if (closed) {
+            return false;
+        }
+        // render objects before writing anything: their toString() may log, and that record
+        // must not land inside this one
+        byte[][] texts = null;
+        int size = 0;
+        for (int i = 0; i < args.count; i++) {
+            if (args.tags[i] == LogRecord.OBJECT) {
+                if (texts == null) {
+                    texts = new byte[args.count][];
+                }
+                texts[i] = String.valueOf(args.refs[i]).getBytes(StandardCharsets.UTF_8);
+                size += 5 + texts[i].length;
+            } else {
+                size += 9;
+            }
+        }
+        Integer id = templateIds.get(template);
+        byte[] text = null;
+        boolean define = false;
+        if (id == null) {
+            text = template.getBytes(StandardCharsets.UTF_8);
+            define = templateIds.size() < MAX_TEMPLATES && text.length <= MAX_TEMPLATE_BYTES;
+        }
+        if (define) {
+            size += 9 + text.length + 15;
+        } else {
+            size += id != null ? 15 : 15 + text.length;
+        }
+
+        // size the whole record up front, so nothing is half-written if it does not fit
+        ByteBuffer out = buffer;
+        if (buffer.remaining() < size) {
+            drain();
+            if (buffer.capacity() < size) {
+                out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        if (define) {
+            id = templateIds.size();
+            out.put(TEMPLATE).putInt(id).putInt(text.length).put(text);
+        }
+        if (id != null) {
+            out.put(RECORD).put((byte) level.ordinal()).putLong(timestampMillis).putInt(id).put((byte) args.count);
+        } else {
+            out.put(INLINE).put((byte) level.ordinal()).putLong(timestampMillis).putInt(text.length).put(text)
+                    .put((byte) args.count);
+        }
+        for (int i = 0; i < args.count; i++) {
+            byte tag = args.tags[i];
+            if (tag == LogRecord.OBJECT) {
+                out.put(tag).putInt(texts[i].length).put(texts[i]);
+            } else {
+                out.put(tag).putLong(args.bits[i]);
+            }
+        }
+        if (out != buffer) {
+            writeFully(out);
+        }
+        // only now that its 'T' record is out may other records refer to the id
+        if (define) {
+            templateIds.put(template, id);
+        }
+        return true;
+    }
+
+    private void drain() {
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer b) {
+        b.flip();
+        try {
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        } catch (IOException e) {
+            System.err.println("binary log write failed: " + e);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (!closed) {
+            drain();
+        }
+    }
+
+    /**
+     * Drains and closes the file. Writers that reach the sink afterwards get
+     * false from write() instead of writing to a closed channel.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        drain();
+        closed = true;
+        try {
+            Runtime.getRuntime().removeShutdownHook(flushOnExit);
+        } catch (IllegalStateException e) {
+            // already shutting down; the hook finds the sink closed
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("binary log close failed: " + e);
+        }
     }
 }
 
 public class App {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Logger logger1 = Logger.getInstance();
         Logger logger2 = Logger.getInstance();
 
         System.out.println(logger1 == logger2);
 
         logger1.info("Application started");
+
+        // parameterized: nothing is formatted for the DEBUG call, which is below the level
+        logger1.at(Level.INFO).arg(3).arg(12.5).log("Printed {} pages in {} s");
+        logger1.at(Level.DEBUG).arg("page-1").log("Rendered {}");
+
+        // binary file: raw arguments only; render later with LogDecoder
+        Path file = Files.createTempFile("printer", ".blog");
+        Files.delete(file);
+        logger1.useBinaryFile(file);
+        for (int i = 0; i < 1000; i++) {
+            logger1.at(Level.INFO).arg(i).arg(i % 2 == 0).log("Job {} duplex={}");
+        }
+        // a template built at runtime: one id however many times it is built
+        int tray = 2;
+        for (int i = 0; i < 3; i++) {
+            logger1.at(Level.WARN).arg(i).log("Tray " + tray + " empty, retry {}");
+        }
+        logger1.useConsole();
+        System.out.println("binary log: " + file + " (" + Files.size(file) + " bytes); decode with: java LogDecoder " + file);
     }
-}
\ No newline at end of file
+}
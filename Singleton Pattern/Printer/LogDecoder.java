@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Standalone decoder for the binary log written by App's BinaryFileSink.
+ * Renders each record as "timestamp LEVEL message" on stdout. Has no
+ * dependency on the logger, so it can be shipped on its own.
+ *
+ * Usage: java LogDecoder file.blog [--level WARN]
+ */
+public class LogDecoder {
+    private static final int MAGIC = 0x474F4C42;
+    private static final int VERSION = 2;
+    private static final byte TEMPLATE = 'T';
+    private static final byte RECORD = 'R';
+    private static final byte INLINE = 'I';
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte BOOLEAN = 3;
+    private static final String[] LEVELS = { "TRACE", "DEBUG", "INFO", "WARN", "ERROR" };
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: java LogDecoder file.blog [--level WARN]");
+            System.exit(2);
+        }
+        int minLevel = 0;
+        if (args.length == 3 && args[1].equals("--level")) {
+            minLevel = List.of(LEVELS).indexOf(args[2]);
+            if (minLevel < 0)
+                throw new IllegalArgumentException("unknown level: " + args[2]);
+        }
+        decode(Paths.get(args[0]), minLevel);
+    }
+
+    private static void decode(Path file, int minLevel) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (in.remaining() < 8 || in.getInt() != MAGIC)
+            throw new IOException("not a binary log: " + file);
+        int version = in.getInt();
+        // version 2 only added inline records
+        if (version < 1 || version > VERSION)
+            throw new IOException("unsupported binary log version " + version);
+
+        List<String> templates = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        while (in.hasRemaining()) {
+            byte type = in.get();
+            if (type == TEMPLATE) {
+                int id = in.getInt();
+                String text = string(in);
+                while (templates.size() <= id) {
+                    templates.add(null);
+                }
+                templates.set(id, text);
+            } else if (type == RECORD || type == INLINE) {
+                int level = in.get();
+                long millis = in.getLong();
+                String template = type == RECORD ? templates.get(in.getInt()) : string(in);
+                int count = in.get();
+                line.setLength(0);
+                line.append(Instant.ofEpochMilli(millis)).append(' ').append(LEVELS[level]).append(' ');
+                int from = 0;
+                for (int i = 0; i < count; i++) {
+                    String arg = argument(in);
+                    int at = template.indexOf("{}", from);
+                    if (at < 0) {
+                        continue;
+                    }
+                    line.append(template, from, at).append(arg);
+                    from = at + 2;
+                }
+                line.append(template, from, template.length());
+                if (level >= minLevel) {
+                    System.out.println(line);
+                }
+            } else {
+                throw new IOException("corrupt binary log at byte " + (in.position() - 1));
+            }
+        }
+    }
+
+    private static String argument(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case LONG:
+                return Long.toString(in.getLong());
+            case DOUBLE:
+                return Double.toString(in.getDouble());
+            case BOOLEAN:
+                return Boolean.toString(in.getLong() != 0);
+            default:
+                return string(in);
+        }
+    }
+
+    private static String string(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}